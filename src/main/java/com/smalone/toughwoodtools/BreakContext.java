@@ -0,0 +1,76 @@
+package com.smalone.toughwoodtools;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+
+/**
+ * Describes a single block break for the collapse logic: the broken block and, when the breaker
+ * stands in the same world, the breaker's block position.
+ */
+public class BreakContext {
+
+    static final int LAYERS_EVALUATED = 1 << 7;
+    static final int SUPPORT_UNCHECKED = 0;
+    static final int SUPPORT_FOUND = 1;
+    static final int SUPPORT_MISSING = 2;
+
+    int x;
+    int y;
+    int z;
+    Material type;
+    boolean hasPlayer;
+    int playerX;
+    int playerY;
+    int playerZ;
+    /** Reused for the player's position so building a context does not allocate. */
+    private final Location scratch = new Location(null, 0.0D, 0.0D, 0.0D);
+    /** Mining fatigue level of the surrounding chunk section; each level tightens the tunnel rule. */
+    int fatigue;
+
+    // Filled in by MiningSafetyManager while evaluating, for the collapse decision trace.
+    /** Bit n set when layer n+1 was stable; {@link #LAYERS_EVALUATED} when the layers were checked. */
+    int layerFlags;
+    int airRunX;
+    int airRunZ;
+    int support;
+    int spawned;
+
+    public BreakContext set(int x, int y, int z, Material type) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.type = type;
+        this.hasPlayer = false;
+        this.fatigue = 0;
+        this.layerFlags = 0;
+        this.airRunX = 0;
+        this.airRunZ = 0;
+        this.support = SUPPORT_UNCHECKED;
+        this.spawned = 0;
+        return this;
+    }
+
+    public BreakContext withPlayerPosition(int playerX, int playerY, int playerZ) {
+        this.hasPlayer = true;
+        this.playerX = playerX;
+        this.playerY = playerY;
+        this.playerZ = playerZ;
+        return this;
+    }
+
+    public BreakContext set(Block broken, Player player) {
+        set(broken.getX(), broken.getY(), broken.getZ(), broken.getType());
+        if (player == null) {
+            return this;
+        }
+        Location pl = player.getLocation(scratch);
+        World world = broken.getWorld();
+        if (pl.getWorld() != null && world != null && pl.getWorld().equals(world)) {
+            withPlayerPosition(pl.getBlockX(), pl.getBlockY(), pl.getBlockZ());
+        }
+        return this;
+    }
+}
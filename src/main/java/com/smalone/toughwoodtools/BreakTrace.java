@@ -0,0 +1,161 @@
+package com.smalone.toughwoodtools;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary layout shared by {@link BreakTraceRecorder} and {@link TraceReplay}.
+ *
+ * <p>The trace file is a fixed-size ring: a small header followed by {@code capacity} slots of
+ * {@link #SLOT_SIZE} bytes. Each slot holds one block break plus the voxels around it, which is
+ * everything the collapse rules read.</p>
+ */
+final class BreakTrace {
+
+    static final int MAGIC = 0x54544254; // "TTBT"
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 64;
+    static final int WRITTEN_OFFSET = 16;
+
+    /** Horizontal reach of the captured box: tunnel checks look up to 7 blocks along an axis. */
+    static final int RADIUS = 8;
+    /** Cave-ceiling checks look 5 blocks down. */
+    static final int BELOW = 6;
+    /** Vertical shaft fills reach 16 above a player standing up to 3 above the break. */
+    static final int ABOVE = 20;
+    static final int SIZE_XZ = RADIUS * 2 + 1;
+    static final int SIZE_Y = BELOW + ABOVE + 1;
+    static final int COLUMNS = SIZE_XZ * SIZE_XZ;
+    static final int CELLS = COLUMNS * SIZE_Y;
+
+    private static final int RECORD_HEADER_SIZE = 8 + 16 + 16 + 12 + 4 + 12 + 2;
+    static final int SLOT_SIZE = RECORD_HEADER_SIZE + COLUMNS * 2 + CELLS * 2;
+
+    private BreakTrace() {
+    }
+
+    static int cellIndex(int bx, int by, int bz) {
+        return (by * SIZE_XZ + bz) * SIZE_XZ + bx;
+    }
+
+    static int columnIndex(int bx, int bz) {
+        return bz * SIZE_XZ + bx;
+    }
+
+    static void writeFileHeader(ByteBuffer buffer, int capacity, long written) {
+        buffer.clear();
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(capacity);
+        buffer.putInt(SLOT_SIZE);
+        buffer.putLong(written);
+        while (buffer.position() < FILE_HEADER_SIZE) {
+            buffer.put((byte) 0);
+        }
+        buffer.flip();
+    }
+
+    static long slotOffset(long sequence, int capacity) {
+        return FILE_HEADER_SIZE + (sequence % capacity) * (long) SLOT_SIZE;
+    }
+
+    /**
+     * One captured block break. Instances are reused by the writer and the replay loop.
+     */
+    static final class Record {
+        long tick;
+        long playerMost;
+        long playerLeast;
+        long worldMost;
+        long worldLeast;
+        int x;
+        int y;
+        int z;
+        int typeId;
+        boolean hasPlayer;
+        int playerX;
+        int playerY;
+        int playerZ;
+        int maxHeight;
+        final short[] heights = new short[COLUMNS];
+        final byte[] types = new byte[CELLS];
+        final byte[] data = new byte[CELLS];
+
+        int minX() {
+            return x - RADIUS;
+        }
+
+        int minY() {
+            return y - BELOW;
+        }
+
+        int minZ() {
+            return z - RADIUS;
+        }
+
+        void copyFrom(Record other) {
+            tick = other.tick;
+            playerMost = other.playerMost;
+            playerLeast = other.playerLeast;
+            worldMost = other.worldMost;
+            worldLeast = other.worldLeast;
+            x = other.x;
+            y = other.y;
+            z = other.z;
+            typeId = other.typeId;
+            hasPlayer = other.hasPlayer;
+            playerX = other.playerX;
+            playerY = other.playerY;
+            playerZ = other.playerZ;
+            maxHeight = other.maxHeight;
+            System.arraycopy(other.heights, 0, heights, 0, COLUMNS);
+            System.arraycopy(other.types, 0, types, 0, CELLS);
+            System.arraycopy(other.data, 0, data, 0, CELLS);
+        }
+
+        void write(ByteBuffer buffer) {
+            buffer.putLong(tick);
+            buffer.putLong(playerMost);
+            buffer.putLong(playerLeast);
+            buffer.putLong(worldMost);
+            buffer.putLong(worldLeast);
+            buffer.putInt(x);
+            buffer.putInt(y);
+            buffer.putInt(z);
+            buffer.putShort((short) typeId);
+            buffer.put((byte) 0);
+            buffer.put((byte) (hasPlayer ? 1 : 0));
+            buffer.putInt(playerX);
+            buffer.putInt(playerY);
+            buffer.putInt(playerZ);
+            buffer.putShort((short) maxHeight);
+            for (short height : heights) {
+                buffer.putShort(height);
+            }
+            buffer.put(types);
+            buffer.put(data);
+        }
+
+        void read(ByteBuffer buffer) {
+            tick = buffer.getLong();
+            playerMost = buffer.getLong();
+            playerLeast = buffer.getLong();
+            worldMost = buffer.getLong();
+            worldLeast = buffer.getLong();
+            x = buffer.getInt();
+            y = buffer.getInt();
+            z = buffer.getInt();
+            typeId = buffer.getShort() & 0xFFFF;
+            buffer.get();
+            hasPlayer = buffer.get() != 0;
+            playerX = buffer.getInt();
+            playerY = buffer.getInt();
+            playerZ = buffer.getInt();
+            maxHeight = buffer.getShort() & 0xFFFF;
+            for (int i = 0; i < COLUMNS; i++) {
+                heights[i] = buffer.getShort();
+            }
+            buffer.get(types);
+            buffer.get(data);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.smalone.toughwoodtools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Record block breaks into a fixed-size binary ring file for offline replay with {@link TraceReplay}.
+ *
+ * <p>The main thread copies only the {@link BreakTrace} box around the break into a pooled
+ * {@link BreakTrace.Record}; encoding and writing it to disk happens on a single background thread,
+ * which hands the record back to the pool. When the writer falls behind and the pool is spent, new
+ * captures are dropped rather than stalling the tick.</p>
+ */
+public class BreakTraceRecorder implements Listener {
+
+    private static final int MAX_PENDING = 256;
+
+    private final ToughTools plugin;
+    private final int capacity;
+    private final FileChannel channel;
+    private final ThreadPoolExecutor writer;
+    private final BukkitTask tickTask;
+    private final ConcurrentLinkedQueue<BreakTrace.Record> pool = new ConcurrentLinkedQueue<BreakTrace.Record>();
+    private final ByteBuffer slotBuffer = ByteBuffer.allocateDirect(BreakTrace.SLOT_SIZE);
+    private final ByteBuffer headerBuffer = ByteBuffer.allocateDirect(BreakTrace.FILE_HEADER_SIZE);
+    /** Records ever created; only touched on the main thread. */
+    private int pooled;
+    private long tick;
+    private long written;
+
+    public BreakTraceRecorder(ToughTools plugin, File file, int capacity) throws IOException {
+        this.plugin = plugin;
+        this.capacity = Math.max(1, capacity);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent);
+        }
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        writeHeader();
+
+        this.writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_PENDING), runnable -> {
+                    Thread thread = new Thread(runnable, "ToughTools-TraceWriter");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+        this.tickTask = plugin.getServer().getScheduler().runTaskTimer(plugin, () -> tick++, 1L, 1L);
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        BreakTrace.Record record = pool.poll();
+        if (record == null) {
+            if (pooled >= MAX_PENDING) {
+                return;
+            }
+            record = new BreakTrace.Record();
+            pooled++;
+        }
+
+        Block broken = event.getBlock();
+        World world = broken.getWorld();
+        Player player = event.getPlayer();
+        UUID playerId = player.getUniqueId();
+        UUID worldId = world.getUID();
+        record.tick = tick;
+        record.playerMost = playerId.getMostSignificantBits();
+        record.playerLeast = playerId.getLeastSignificantBits();
+        record.worldMost = worldId.getMostSignificantBits();
+        record.worldLeast = worldId.getLeastSignificantBits();
+        record.x = broken.getX();
+        record.y = broken.getY();
+        record.z = broken.getZ();
+        record.typeId = broken.getTypeId();
+        record.maxHeight = world.getMaxHeight();
+        Location pl = player.getLocation();
+        record.hasPlayer = world.equals(pl.getWorld());
+        record.playerX = pl.getBlockX();
+        record.playerY = pl.getBlockY();
+        record.playerZ = pl.getBlockZ();
+        copyBox(world, record);
+
+        BreakTrace.Record captured = record;
+        writer.execute(() -> write(captured));
+    }
+
+    public void close() {
+        tickTask.cancel();
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not close break trace file", e);
+        }
+    }
+
+    private void write(BreakTrace.Record record) {
+        slotBuffer.clear();
+        record.write(slotBuffer);
+        slotBuffer.flip();
+        pool.offer(record);
+        try {
+            long position = BreakTrace.slotOffset(written, capacity);
+            while (slotBuffer.hasRemaining()) {
+                position += channel.write(slotBuffer, position);
+            }
+            written++;
+            writeHeader();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not write break trace record", e);
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        BreakTrace.writeFileHeader(headerBuffer, capacity, written);
+        long position = 0L;
+        while (headerBuffer.hasRemaining()) {
+            position += channel.write(headerBuffer, position);
+        }
+    }
+
+    /**
+     * Copy the voxels and heights of the record's box out of the world. Columns in unloaded chunks are
+     * recorded as empty rather than loading them.
+     */
+    @SuppressWarnings("deprecation")
+    private static void copyBox(World world, BreakTrace.Record record) {
+        int minX = record.minX();
+        int minY = record.minY();
+        int minZ = record.minZ();
+        for (int bz = 0; bz < BreakTrace.SIZE_XZ; bz++) {
+            for (int bx = 0; bx < BreakTrace.SIZE_XZ; bx++) {
+                int x = minX + bx;
+                int z = minZ + bz;
+                boolean loaded = world.isChunkLoaded(x >> 4, z >> 4);
+                record.heights[BreakTrace.columnIndex(bx, bz)] = loaded ? (short) world.getHighestBlockYAt(x, z) : 0;
+                for (int by = 0; by < BreakTrace.SIZE_Y; by++) {
+                    int y = minY + by;
+                    int index = BreakTrace.cellIndex(bx, by, bz);
+                    int typeId = !loaded || y < 0 || y >= record.maxHeight ? 0 : world.getBlockTypeIdAt(x, y, z);
+                    record.types[index] = (byte) typeId;
+                    // Air never carries data, so only solid cells pay for a block lookup.
+                    record.data[index] = typeId == 0 ? 0 : world.getBlockAt(x, y, z).getData();
+                }
+            }
+        }
+    }
+}
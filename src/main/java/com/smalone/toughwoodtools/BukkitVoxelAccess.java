@@ -0,0 +1,77 @@
+package com.smalone.toughwoodtools;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.FallingBlock;
+
+/**
+ * {@link VoxelAccess} backed by a live Bukkit world. Type reads go through block type ids rather than
+ * {@link Block} wrappers, which saves the wrapper per lookup; CraftWorld still allocates a block
+ * position internally for each type and height read. One instance can be re-pointed at another world
+ * with {@link #bind}.
+ */
+public class BukkitVoxelAccess implements VoxelAccess {
+
+    private World world;
+
+    public BukkitVoxelAccess(World world) {
+        this.world = world;
+    }
+
+    public BukkitVoxelAccess bind(World world) {
+        this.world = world;
+        return this;
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public Material getType(int x, int y, int z) {
+        Material type = Material.getMaterial(world.getBlockTypeIdAt(x, y, z));
+        return type == null ? Material.AIR : type;
+    }
+
+    @Override
+    public byte getData(int x, int y, int z) {
+        return world.getBlockAt(x, y, z).getData();
+    }
+
+    @Override
+    public int getHighestBlockY(int x, int z) {
+        return world.getHighestBlockYAt(x, z);
+    }
+
+    @Override
+    public int getMaxHeight() {
+        return world.getMaxHeight();
+    }
+
+    @Override
+    public void setAir(int x, int y, int z) {
+        world.getBlockAt(x, y, z).setType(Material.AIR);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void setBlock(int x, int y, int z, Material type, byte data) {
+        Block block = world.getBlockAt(x, y, z);
+        block.setType(type, false);
+        block.setData(data, false);
+    }
+
+    @Override
+    public void spawnFallingBlock(double x, double y, double z, Material type, byte data) {
+        FallingBlock falling = world.spawnFallingBlock(new Location(world, x, y, z), type, data);
+        try {
+            falling.setDropItem(false);
+            falling.setHurtEntities(false);
+        } catch (NoSuchMethodError ignored) {
+            // Older API revisions may not support these toggles; gravity is sufficient.
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.smalone.toughwoodtools;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.bukkit.World;
+
+/**
+ * Keep world scans from forcing synchronous chunk loads.
+ *
+ * <p>Callers check {@link #isAreaLoaded} before scanning. If the area is not fully loaded they hand
+ * the work to {@link #runWhenLoaded}, which runs it on a later tick once every chunk it needs has
+ * been loaded. Spigot 1.12 has no asynchronous chunk loading, so the guard waits for chunks to load
+ * naturally and requests at most {@code chunk-guard-loads-per-tick} missing chunks per tick.
+ * Chunks are never generated; pending work is given up as soon as a chunk it needs turns out not to
+ * exist yet, or after {@code chunk-guard-timeout-ticks}, and its fallback runs instead. Work given
+ * up without a fallback, or refused because too much is pending, is counted and reported to the log
+ * once a minute.</p>
+ */
+public class ChunkGuard implements Runnable {
+
+    private static final int MAX_PENDING = 256;
+    private static final int DROP_REPORT_TICKS = 1200;
+
+    private final int loadsPerTick;
+    private final int timeoutTicks;
+    private final Logger logger;
+    private final List<Pending> pending = new ArrayList<Pending>();
+    private final List<Runnable> ready = new ArrayList<Runnable>();
+    private long tick;
+    private int dropped;
+
+    public ChunkGuard(int loadsPerTick, int timeoutTicks, Logger logger) {
+        this.loadsPerTick = Math.max(0, loadsPerTick);
+        this.timeoutTicks = Math.max(1, timeoutTicks);
+        this.logger = logger;
+    }
+
+    /**
+     * Whether every chunk touching the given block rectangle is loaded.
+     */
+    public static boolean isAreaLoaded(World world, int minX, int minZ, int maxX, int maxZ) {
+        for (int cx = minX >> 4; cx <= maxX >> 4; cx++) {
+            for (int cz = minZ >> 4; cz <= maxZ >> 4; cz++) {
+                if (!world.isChunkLoaded(cx, cz)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Run the task now if the area is loaded, otherwise on the first tick after it is. The task is
+     * dropped, and counted in the periodic log report, if the area cannot be loaded.
+     *
+     * @return false when the task was dropped because too much work is already pending
+     */
+    public boolean runWhenLoaded(World world, int minX, int minZ, int maxX, int maxZ, Runnable task) {
+        return runWhenLoaded(world, minX, minZ, maxX, maxZ, task, null);
+    }
+
+    /**
+     * Like {@link #runWhenLoaded(World, int, int, int, int, Runnable)}, but runs {@code unavailable} on a
+     * later tick instead of the task if the area needs an ungenerated chunk or does not load in time.
+     */
+    public boolean runWhenLoaded(World world, int minX, int minZ, int maxX, int maxZ, Runnable task,
+            Runnable unavailable) {
+        if (isAreaLoaded(world, minX, minZ, maxX, maxZ)) {
+            task.run();
+            return true;
+        }
+        if (pending.size() >= MAX_PENDING) {
+            dropped++;
+            return false;
+        }
+        pending.add(new Pending(world, minX, minZ, maxX, maxZ, task, unavailable, tick + timeoutTicks));
+        return true;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Tasks dropped since the last log report.
+     */
+    public int getDroppedCount() {
+        return dropped;
+    }
+
+    @Override
+    public void run() {
+        tick++;
+        if (tick % DROP_REPORT_TICKS == 0 && dropped > 0) {
+            logger.warning("Chunk guard dropped " + dropped + " deferred task(s) in the last minute: their chunks"
+                    + " did not load within " + timeoutTicks + " ticks, were not generated, or the queue was full.");
+            dropped = 0;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        int loadsLeft = loadsPerTick;
+        Iterator<Pending> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            Pending entry = iterator.next();
+            if (isAreaLoaded(entry.world, entry.minX, entry.minZ, entry.maxX, entry.maxZ)) {
+                iterator.remove();
+                ready.add(entry.task);
+            } else if (entry.missing || tick >= entry.deadline) {
+                iterator.remove();
+                if (entry.unavailable != null) {
+                    ready.add(entry.unavailable);
+                } else {
+                    dropped++;
+                }
+            } else if (loadsLeft > 0) {
+                loadsLeft -= loadMissing(entry, loadsLeft);
+            }
+        }
+
+        // Run outside the iteration: tasks may queue follow-up work.
+        for (Runnable task : ready) {
+            task.run();
+        }
+        ready.clear();
+    }
+
+    private int loadMissing(Pending entry, int budget) {
+        int loaded = 0;
+        for (int cx = entry.minX >> 4; cx <= entry.maxX >> 4 && loaded < budget; cx++) {
+            for (int cz = entry.minZ >> 4; cz <= entry.maxZ >> 4 && loaded < budget; cz++) {
+                if (!entry.world.isChunkLoaded(cx, cz)) {
+                    if (!entry.world.loadChunk(cx, cz, false)) {
+                        // Not generated yet; waiting will not help.
+                        entry.missing = true;
+                    }
+                    loaded++;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private static final class Pending {
+        final World world;
+        final int minX;
+        final int minZ;
+        final int maxX;
+        final int maxZ;
+        final Runnable task;
+        final Runnable unavailable;
+        final long deadline;
+        boolean missing;
+
+        Pending(World world, int minX, int minZ, int maxX, int maxZ, Runnable task, Runnable unavailable,
+                long deadline) {
+            this.world = world;
+            this.minX = minX;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxZ = maxZ;
+            this.task = task;
+            this.unavailable = unavailable;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.smalone.toughwoodtools;
+
+import java.util.UUID;
+
+/**
+ * Per-player, per-position cooldown so repeated breaks at the same spot cannot chain collapses.
+ *
+ * <p>Entries live in a fixed open-addressing table of parallel arrays, so checking a break allocates
+ * nothing. Expired entries are reused first; if every probed slot is still cooling down the oldest one
+ * is overwritten, which at worst lets a collapse through slightly early.</p>
+ */
+public class CollapseCooldowns {
+
+    private static final int CAPACITY = 4096;
+    private static final int MAX_PROBES = 16;
+
+    private final long cooldownMillis;
+    private final long[] uuidMost = new long[CAPACITY];
+    private final long[] uuidLeast = new long[CAPACITY];
+    private final String[] worlds = new String[CAPACITY];
+    private final long[] positions = new long[CAPACITY];
+    private final long[] stamps = new long[CAPACITY];
+
+    public CollapseCooldowns(long cooldownMillis) {
+        this.cooldownMillis = cooldownMillis;
+    }
+
+    public boolean isCoolingDown(UUID uuid, String worldName, int x, int y, int z, long nowMillis) {
+        long position = MergedCollapsePlan.key(x, y, z);
+        int start = slotOf(uuid, worldName, position);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = (start + probe) & (CAPACITY - 1);
+            if (worlds[slot] == null) {
+                return false;
+            }
+            if (matches(slot, uuid, worldName, position)) {
+                return nowMillis - stamps[slot] < cooldownMillis;
+            }
+        }
+        return false;
+    }
+
+    public void markCooldown(UUID uuid, String worldName, int x, int y, int z, long nowMillis) {
+        long position = MergedCollapsePlan.key(x, y, z);
+        int start = slotOf(uuid, worldName, position);
+        int free = -1;
+        int oldest = start;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = (start + probe) & (CAPACITY - 1);
+            if (worlds[slot] == null) {
+                if (free < 0) {
+                    free = slot;
+                }
+                break;
+            }
+            if (matches(slot, uuid, worldName, position)) {
+                stamps[slot] = nowMillis;
+                return;
+            }
+            if (free < 0 && nowMillis - stamps[slot] >= cooldownMillis) {
+                free = slot;
+            }
+            if (stamps[slot] < stamps[oldest]) {
+                oldest = slot;
+            }
+        }
+
+        int slot = free >= 0 ? free : oldest;
+        uuidMost[slot] = uuid.getMostSignificantBits();
+        uuidLeast[slot] = uuid.getLeastSignificantBits();
+        worlds[slot] = worldName;
+        positions[slot] = position;
+        stamps[slot] = nowMillis;
+    }
+
+    private boolean matches(int slot, UUID uuid, String worldName, long position) {
+        return positions[slot] == position && uuidMost[slot] == uuid.getMostSignificantBits()
+                && uuidLeast[slot] == uuid.getLeastSignificantBits() && worlds[slot].equals(worldName);
+    }
+
+    private static int slotOf(UUID uuid, String worldName, long position) {
+        long hash = uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits() ^ worldName.hashCode()
+                ^ (position * 0x9E3779B97F4A7C15L);
+        hash *= 0xC2B2AE3D27D4EB4FL;
+        return (int) (hash >>> 40) & (CAPACITY - 1);
+    }
+}
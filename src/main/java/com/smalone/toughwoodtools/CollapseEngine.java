@@ -0,0 +1,10 @@
+package com.smalone.toughwoodtools;
+
+/**
+ * Evaluates a block break against the collapse rules and applies the resulting collapse to the
+ * given world.
+ */
+public interface CollapseEngine {
+
+    CollapseType evaluateBreak(VoxelAccess world, BreakContext context);
+}
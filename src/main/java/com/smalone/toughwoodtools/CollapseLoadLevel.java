@@ -0,0 +1,48 @@
+package com.smalone.toughwoodtools;
+
+/**
+ * Degradation steps applied to collapse processing while the server is lagging. Each level keeps
+ * the restrictions of the levels before it.
+ */
+public enum CollapseLoadLevel {
+    NORMAL(false, 90, false, false),
+    SKIP_VERTICAL(true, 90, false, false),
+    REDUCED_CAPS(true, 30, false, false),
+    DIRECT_WRITES(true, 30, true, false),
+    DEFERRED(true, 30, true, true);
+
+    private final boolean skipVertical;
+    private final int maxFallingBlocks;
+    private final boolean directWrites;
+    private final boolean deferEvaluations;
+
+    CollapseLoadLevel(boolean skipVertical, int maxFallingBlocks, boolean directWrites, boolean deferEvaluations) {
+        this.skipVertical = skipVertical;
+        this.maxFallingBlocks = maxFallingBlocks;
+        this.directWrites = directWrites;
+        this.deferEvaluations = deferEvaluations;
+    }
+
+    /** Skip the four-layer stability analysis behind vertical shaft collapses. */
+    public boolean skipVertical() {
+        return skipVertical;
+    }
+
+    /**
+     * Falling blocks one collapse may spawn. The unsupported-ceiling fallback is only held to this once
+     * the level is above {@link #NORMAL}.
+     */
+    public int maxFallingBlocks() {
+        return maxFallingBlocks;
+    }
+
+    /** Place collapsed blocks where they would land instead of spawning falling-block entities. */
+    public boolean directWrites() {
+        return directWrites;
+    }
+
+    /** Queue evaluations until the server recovers instead of running them during the break. */
+    public boolean deferEvaluations() {
+        return deferEvaluations;
+    }
+}
@@ -0,0 +1,292 @@
+package com.smalone.toughwoodtools;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+
+/**
+ * Lets collapses chain into the cavities they open up. Every collapse records the blocks it removed;
+ * the collapsible block left hanging above the top of each removed column becomes a frontier position
+ * that is re-checked on a later tick with {@link MiningSafetyManager#evaluateExposed}. A cascade stops
+ * at {@code maxDepth} generations or once it has dropped {@code maxVolume} blocks, and all cascades
+ * together never drop more than {@code blocksPerTick} blocks or run more than
+ * {@link #EVALUATIONS_PER_TICK} evaluations in one tick.
+ */
+public class CollapsePropagator implements Runnable {
+
+    private static final int EVALUATIONS_PER_TICK = 4;
+    private static final int MAX_FRONTIER = 256;
+    private static final int MAX_RECORDED_REMOVALS = 256;
+    private static final int SEED_SPACING = 2;
+
+    private final MiningSafetyManager engine;
+    private final MaterialTable materials;
+    private final CollapseTraceBuffer trace;
+    private final LoadGovernor governor;
+    private final int maxDepth;
+    private final int blocksPerTick;
+    private final int maxVolume;
+    private final BreakContext context = new BreakContext();
+    private final RecordingAccess recorder = new RecordingAccess();
+    private final BukkitVoxelAccess access = new BukkitVoxelAccess(null);
+    private final ArrayDeque<Frontier> frontier = new ArrayDeque<Frontier>();
+
+    /**
+     * @param trace receives every collapse a cascade triggers; may be null
+     * @param governor supplies the load level each tick; null always runs at {@link CollapseLoadLevel#NORMAL}
+     */
+    public CollapsePropagator(MiningSafetyManager engine, CollapseTraceBuffer trace, LoadGovernor governor,
+            int maxDepth, int blocksPerTick, int maxVolume) {
+        this.engine = engine;
+        this.materials = engine.getMaterials();
+        this.trace = trace;
+        this.governor = governor;
+        this.maxDepth = maxDepth;
+        this.blocksPerTick = blocksPerTick;
+        this.maxVolume = maxVolume;
+    }
+
+    /**
+     * Wrap a world access so the removals of the next evaluation are recorded for {@link #seed}.
+     * The returned access is reused; it is only valid until the next call.
+     */
+    public VoxelAccess track(VoxelAccess world) {
+        recorder.reset(world, Integer.MAX_VALUE);
+        return recorder;
+    }
+
+    /**
+     * Start a cascade from the removals recorded by the last {@link #track} evaluation.
+     */
+    public void seed(World world, int spawned) {
+        seed(world, null, world.getName(), spawned);
+    }
+
+    /**
+     * Start a cascade that is evaluated directly against {@code voxels}, without chunk checks.
+     */
+    void seed(VoxelAccess voxels, String worldName, int spawned) {
+        seed(null, voxels, worldName, spawned);
+    }
+
+    private void seed(World world, VoxelAccess voxels, String worldName, int spawned) {
+        if (maxDepth <= 0) {
+            return;
+        }
+        Cascade cascade = new Cascade();
+        cascade.world = world;
+        cascade.voxels = voxels;
+        cascade.worldName = worldName;
+        cascade.volume = spawned;
+        enqueueFrontier(cascade, 1);
+    }
+
+    public int getFrontierSize() {
+        return frontier.size();
+    }
+
+    public void clear() {
+        frontier.clear();
+    }
+
+    @Override
+    public void run() {
+        if (frontier.isEmpty()) {
+            return;
+        }
+        CollapseLoadLevel level = governor == null ? CollapseLoadLevel.NORMAL : governor.getLevel();
+        if (level.deferEvaluations()) {
+            return;
+        }
+        engine.setLoadLevel(level);
+
+        int blocksLeft = blocksPerTick;
+        int reach = MiningSafetyManager.SCAN_REACH;
+        for (int i = 0; i < EVALUATIONS_PER_TICK && blocksLeft > 0 && !frontier.isEmpty(); i++) {
+            Frontier next = frontier.poll();
+            Cascade cascade = next.cascade;
+            int budget = Math.min(blocksLeft, maxVolume - cascade.volume);
+            if (budget <= 0) {
+                continue;
+            }
+            VoxelAccess voxels = cascade.voxels;
+            if (cascade.world != null) {
+                if (!ChunkGuard.isAreaLoaded(cascade.world, next.x - reach, next.z - reach, next.x + reach,
+                        next.z + reach)) {
+                    // A cascade never forces chunks to load; the frontier simply ends at the loaded edge.
+                    continue;
+                }
+                voxels = access.bind(cascade.world);
+            }
+            // The falling blocks of the previous generation may have landed here meanwhile.
+            Material type = voxels.getType(next.x, next.y, next.z);
+            if (type == Material.AIR || !materials.isCollapsible(type)) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+            recorder.reset(voxels, budget);
+            context.set(next.x, next.y, next.z, type);
+            CollapseType triggered = engine.evaluateExposed(recorder, context);
+            int dropped = budget - recorder.budget;
+            context.spawned = dropped;
+            blocksLeft -= dropped;
+            cascade.volume += dropped;
+            if (triggered != CollapseType.NONE) {
+                if (trace != null) {
+                    trace.record(cascade.worldName, context, triggered, System.nanoTime() - start);
+                }
+                if (next.depth < maxDepth) {
+                    enqueueFrontier(cascade, next.depth + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Queue the ceiling exposed above each removed column: the block over the top removal, if it is
+     * still there and collapsible.
+     */
+    private void enqueueFrontier(Cascade cascade, int depth) {
+        if (recorder.removed == 0 || cascade.volume >= maxVolume) {
+            return;
+        }
+        Set<Long> removed = new HashSet<Long>();
+        for (int i = 0; i < recorder.removed; i++) {
+            removed.add(MergedCollapsePlan.key(recorder.xs[i], recorder.ys[i], recorder.zs[i]));
+        }
+
+        int maxHeight = recorder.getMaxHeight();
+        int seedsStart = frontier.size();
+        for (int i = 0; i < recorder.removed && frontier.size() < MAX_FRONTIER; i++) {
+            int x = recorder.xs[i];
+            int y = recorder.ys[i] + 1;
+            int z = recorder.zs[i];
+            if (y >= maxHeight || removed.contains(MergedCollapsePlan.key(x, y, z))) {
+                continue;
+            }
+            Material ceiling = recorder.getType(x, y, z);
+            if (ceiling == Material.AIR || !materials.isCollapsible(ceiling)) {
+                continue;
+            }
+            long key = MergedCollapsePlan.key(x, y, z);
+            if (!cascade.visited.add(key) || isNearSeed(x, y, z, seedsStart)) {
+                continue;
+            }
+            Frontier entry = new Frontier();
+            entry.cascade = cascade;
+            entry.depth = depth;
+            entry.x = x;
+            entry.y = y;
+            entry.z = z;
+            frontier.add(entry);
+        }
+    }
+
+    /**
+     * Skip seeds right next to one already queued for this collapse; they would evaluate nearly the same
+     * neighborhood.
+     */
+    private boolean isNearSeed(int x, int y, int z, int seedsStart) {
+        int index = 0;
+        for (Frontier entry : frontier) {
+            if (index++ < seedsStart) {
+                continue;
+            }
+            if (Math.abs(entry.x - x) <= SEED_SPACING && Math.abs(entry.z - z) <= SEED_SPACING
+                    && Math.abs(entry.y - y) <= SEED_SPACING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Cascade {
+        World world;
+        VoxelAccess voxels;
+        String worldName;
+        int volume;
+        final Set<Long> visited = new HashSet<Long>();
+    }
+
+    private static final class Frontier {
+        Cascade cascade;
+        int depth;
+        int x;
+        int y;
+        int z;
+    }
+
+    /**
+     * Records removed blocks and stops writing once the block budget is spent. A removal is only
+     * accepted while budget remains, so every accepted removal still gets its falling block.
+     */
+    private static final class RecordingAccess implements VoxelAccess {
+
+        private final int[] xs = new int[MAX_RECORDED_REMOVALS];
+        private final int[] ys = new int[MAX_RECORDED_REMOVALS];
+        private final int[] zs = new int[MAX_RECORDED_REMOVALS];
+        private VoxelAccess delegate;
+        private int budget;
+        private int removed;
+
+        void reset(VoxelAccess delegate, int budget) {
+            this.delegate = delegate;
+            this.budget = budget;
+            this.removed = 0;
+        }
+
+        @Override
+        public Material getType(int x, int y, int z) {
+            return delegate.getType(x, y, z);
+        }
+
+        @Override
+        public byte getData(int x, int y, int z) {
+            return delegate.getData(x, y, z);
+        }
+
+        @Override
+        public int getHighestBlockY(int x, int z) {
+            return delegate.getHighestBlockY(x, z);
+        }
+
+        @Override
+        public int getMaxHeight() {
+            return delegate.getMaxHeight();
+        }
+
+        @Override
+        public void setAir(int x, int y, int z) {
+            if (budget <= 0) {
+                return;
+            }
+            if (removed < MAX_RECORDED_REMOVALS) {
+                xs[removed] = x;
+                ys[removed] = y;
+                zs[removed] = z;
+                removed++;
+            }
+            delegate.setAir(x, y, z);
+        }
+
+        @Override
+        public void setBlock(int x, int y, int z, Material type, byte data) {
+            if (budget > 0) {
+                budget--;
+                delegate.setBlock(x, y, z, type, data);
+            }
+        }
+
+        @Override
+        public void spawnFallingBlock(double x, double y, double z, Material type, byte data) {
+            if (budget > 0) {
+                budget--;
+                delegate.spawnFallingBlock(x, y, z, type, data);
+            }
+        }
+    }
+}
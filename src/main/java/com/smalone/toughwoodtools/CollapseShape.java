@@ -0,0 +1,85 @@
+package com.smalone.toughwoodtools;
+
+/**
+ * A collapse shape compiled to flat offset triplets ({@code dx, dy, dz}) plus group boundaries, so the
+ * collapse rules iterate one primitive array instead of nested loops.
+ *
+ * <p>A shape is a stack of square layers from {@code minDy} to {@code maxDy}; each layer has the base
+ * radii plus {@code grow} per layer above the first. Offsets are stored either layer by layer (every
+ * block of one y before the next) or column by column (the whole dy range of one x/z before the next),
+ * whichever order the rule consumes them in. Within a layer x is the outer and z the inner index.</p>
+ */
+final class CollapseShape {
+
+    /** Offsets grouped by y layer, lowest layer first. */
+    static final int LAYERS = 0;
+    /** Offsets grouped by x/z column, each column from lowest to highest dy. */
+    static final int COLUMNS = 1;
+
+    /** {@code dx, dy, dz} per block, in iteration order. */
+    final int[] offsets;
+    /**
+     * Start of each group as an index into {@link #offsets}; the last entry is {@code offsets.length}.
+     */
+    final int[] groups;
+    /** Largest horizontal distance of any offset from the origin. */
+    final int reach;
+
+    private CollapseShape(int[] offsets, int[] groups, int reach) {
+        this.offsets = offsets;
+        this.groups = groups;
+        this.reach = reach;
+    }
+
+    static CollapseShape compile(int radiusX, int radiusZ, int minDy, int maxDy, int grow, int order) {
+        int layers = maxDy - minDy + 1;
+        int maxRadiusX = radiusX + grow * (layers - 1);
+        int maxRadiusZ = radiusZ + grow * (layers - 1);
+
+        int size = 0;
+        for (int layer = 0; layer < layers; layer++) {
+            size += (2 * (radiusX + grow * layer) + 1) * (2 * (radiusZ + grow * layer) + 1);
+        }
+        int[] offsets = new int[size * 3];
+        int count = 0;
+
+        if (order == LAYERS) {
+            int[] groups = new int[layers + 1];
+            for (int layer = 0; layer < layers; layer++) {
+                groups[layer] = count * 3;
+                int rx = radiusX + grow * layer;
+                int rz = radiusZ + grow * layer;
+                for (int dx = -rx; dx <= rx; dx++) {
+                    for (int dz = -rz; dz <= rz; dz++) {
+                        offsets[count * 3] = dx;
+                        offsets[count * 3 + 1] = minDy + layer;
+                        offsets[count * 3 + 2] = dz;
+                        count++;
+                    }
+                }
+            }
+            groups[layers] = count * 3;
+            return new CollapseShape(offsets, groups, Math.max(maxRadiusX, maxRadiusZ));
+        }
+
+        // Columns: a column exists only in the layers whose radius covers it.
+        int[] groups = new int[(2 * maxRadiusX + 1) * (2 * maxRadiusZ + 1) + 1];
+        int group = 0;
+        for (int dx = -maxRadiusX; dx <= maxRadiusX; dx++) {
+            for (int dz = -maxRadiusZ; dz <= maxRadiusZ; dz++) {
+                groups[group++] = count * 3;
+                for (int layer = 0; layer < layers; layer++) {
+                    if (Math.abs(dx) > radiusX + grow * layer || Math.abs(dz) > radiusZ + grow * layer) {
+                        continue;
+                    }
+                    offsets[count * 3] = dx;
+                    offsets[count * 3 + 1] = minDy + layer;
+                    offsets[count * 3 + 2] = dz;
+                    count++;
+                }
+            }
+        }
+        groups[group] = count * 3;
+        return new CollapseShape(offsets, groups, Math.max(maxRadiusX, maxRadiusZ));
+    }
+}
@@ -0,0 +1,111 @@
+package com.smalone.toughwoodtools;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+
+/**
+ * The shapes used by the collapse rules, read from the {@code collapse-shapes} section of config.yml.
+ * The defaults reproduce the original hand-written loops block for block.
+ *
+ * <p>Each entry takes {@code radius-x}, {@code radius-z}, {@code min-dy}, {@code max-dy} and
+ * {@code grow}. For {@code tunnel} the x radius runs across the tunnel and the z radius along it.</p>
+ *
+ * <p>Only the fixed profiles in {@link #NAMES} exist, one per collapse rule; entries under any other
+ * name are ignored with a warning, since there is no rule that would use them.</p>
+ */
+public final class CollapseShapes {
+
+    private static final int MAX_LAYERS = 32;
+
+    private static final String[] NAMES = {"cave-ceiling", "vertical-shaft", "tunnel"};
+    /** radius-x, radius-z, min-dy, max-dy, grow for each of {@link #NAMES}. */
+    private static final int[][] DEFAULTS = {
+            {2, 2, -5, -1, 0},
+            {1, 1, 0, 16, 0},
+            {1, 0, 1, 6, 0}
+    };
+    /** How each rule walks its shape. */
+    private static final int[] ORDERS = {
+            CollapseShape.COLUMNS, CollapseShape.LAYERS, CollapseShape.COLUMNS
+    };
+    private static final int TUNNEL = 2;
+
+    /** Columns below a broken cave ceiling; each column is refilled by the air it contains. */
+    final CollapseShape caveCeiling;
+    /** Layers from the player's feet upwards that are filled when a shaft collapses. */
+    final CollapseShape verticalShaft;
+    /** Cross-section above each step of a collapsing tunnel. */
+    final CollapseShape tunnel;
+
+    private CollapseShapes(CollapseShape[] shapes) {
+        this.caveCeiling = shapes[0];
+        this.verticalShaft = shapes[1];
+        this.tunnel = shapes[2];
+    }
+
+    public static CollapseShapes defaults() {
+        return load(null, null);
+    }
+
+    public static void addDefaults(FileConfiguration config) {
+        for (int i = 0; i < NAMES.length; i++) {
+            String path = "collapse-shapes." + NAMES[i];
+            config.addDefault(path + ".radius-x", DEFAULTS[i][0]);
+            config.addDefault(path + ".radius-z", DEFAULTS[i][1]);
+            config.addDefault(path + ".min-dy", DEFAULTS[i][2]);
+            config.addDefault(path + ".max-dy", DEFAULTS[i][3]);
+            config.addDefault(path + ".grow", DEFAULTS[i][4]);
+        }
+    }
+
+    /**
+     * Compile the shapes in {@code section}, falling back to the default for any shape that is missing or
+     * invalid. Shapes are limited so they never reach past {@link MiningSafetyManager#SCAN_REACH}, the area
+     * the chunk guard makes sure is loaded.
+     */
+    public static CollapseShapes load(ConfigurationSection section, Logger logger) {
+        if (section != null && logger != null) {
+            for (String name : section.getKeys(false)) {
+                if (!Arrays.asList(NAMES).contains(name)) {
+                    logger.warning("Ignoring unknown collapse shape " + name + "; only " + Arrays.toString(NAMES)
+                            + " can be configured.");
+                }
+            }
+        }
+        CollapseShape[] shapes = new CollapseShape[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++) {
+            int[] values = DEFAULTS[i].clone();
+            ConfigurationSection entry = section == null ? null : section.getConfigurationSection(NAMES[i]);
+            if (entry != null) {
+                values[0] = entry.getInt("radius-x", values[0]);
+                values[1] = entry.getInt("radius-z", values[1]);
+                values[2] = entry.getInt("min-dy", values[2]);
+                values[3] = entry.getInt("max-dy", values[3]);
+                values[4] = entry.getInt("grow", values[4]);
+            }
+
+            int limitX = MiningSafetyManager.SCAN_REACH;
+            int limitZ = MiningSafetyManager.SCAN_REACH;
+            if (i == TUNNEL) {
+                // The tunnel shape is also stepped along the tunnel for up to the maximum run length.
+                limitZ -= MiningSafetyManager.MAX_HORIZONTAL_DISTANCE;
+            }
+            int layers = values[3] - values[2] + 1;
+            int widestX = values[0] + values[4] * (layers - 1);
+            int widestZ = values[1] + values[4] * (layers - 1);
+            if (values[0] < 0 || values[1] < 0 || values[4] < 0 || layers < 1 || layers > MAX_LAYERS
+                    || widestX > limitX || widestZ > limitZ) {
+                if (logger != null) {
+                    logger.warning("Ignoring collapse shape " + NAMES[i] + ": it must have 1 to " + MAX_LAYERS
+                            + " layers and stay within " + limitX + " blocks across and " + limitZ + " along.");
+                }
+                values = DEFAULTS[i];
+            }
+            shapes[i] = CollapseShape.compile(values[0], values[1], values[2], values[3], values[4], ORDERS[i]);
+        }
+        return new CollapseShapes(shapes);
+    }
+}
@@ -0,0 +1,244 @@
+package com.smalone.toughwoodtools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fixed-size ring of structured collapse decisions.
+ *
+ * <p>All storage is preallocated as parallel primitive arrays, so {@link #record} never allocates.
+ * It is written from the main thread only, under the write side of a {@link StampedLock}. The command
+ * and the background exporter never lock: they copy a slot under an optimistic read and retry if a
+ * write happened meanwhile, so the writer is never blocked. Each slot also remembers the sequence
+ * number it holds, so a reader can tell when a slot has already been overwritten.</p>
+ */
+public class CollapseTraceBuffer {
+
+    private static final CollapseType[] TYPES = CollapseType.values();
+    private static final long EXPORT_INTERVAL_SECONDS = 5L;
+    private static final int READ_ATTEMPTS = 4;
+    private static final String TIME_PATTERN = "HH:mm:ss.SSS";
+
+    private final int capacity;
+    private final StampedLock lock = new StampedLock();
+    private final long[] sequences;
+    private final long[] times;
+    private final String[] worlds;
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] zs;
+    private final byte[] types;
+    private final byte[] layerFlags;
+    private final byte[] airRunsX;
+    private final byte[] airRunsZ;
+    private final byte[] supports;
+    private final short[] spawned;
+    private final long[] nanos;
+    private final AtomicLong written = new AtomicLong();
+
+    private ScheduledExecutorService exporter;
+    private Writer exportWriter;
+    private long exported;
+
+    public CollapseTraceBuffer(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.sequences = new long[this.capacity];
+        this.times = new long[this.capacity];
+        this.worlds = new String[this.capacity];
+        this.xs = new int[this.capacity];
+        this.ys = new int[this.capacity];
+        this.zs = new int[this.capacity];
+        this.types = new byte[this.capacity];
+        this.layerFlags = new byte[this.capacity];
+        this.airRunsX = new byte[this.capacity];
+        this.airRunsZ = new byte[this.capacity];
+        this.supports = new byte[this.capacity];
+        this.spawned = new short[this.capacity];
+        this.nanos = new long[this.capacity];
+        Arrays.fill(sequences, -1L);
+    }
+
+    /**
+     * Store one decision. Main thread only.
+     */
+    public void record(String world, BreakContext context, CollapseType type, long elapsedNanos) {
+        long sequence = written.get();
+        int slot = (int) (sequence % capacity);
+        long stamp = lock.writeLock();
+        sequences[slot] = sequence;
+        times[slot] = System.currentTimeMillis();
+        worlds[slot] = world;
+        xs[slot] = context.x;
+        ys[slot] = context.y;
+        zs[slot] = context.z;
+        types[slot] = (byte) type.ordinal();
+        layerFlags[slot] = (byte) context.layerFlags;
+        airRunsX[slot] = (byte) context.airRunX;
+        airRunsZ[slot] = (byte) context.airRunZ;
+        supports[slot] = (byte) context.support;
+        spawned[slot] = (short) context.spawned;
+        nanos[slot] = elapsedNanos;
+        lock.unlockWrite(stamp);
+        written.lazySet(sequence + 1);
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * Format the most recent decisions, newest first.
+     */
+    public List<String> latest(int limit) {
+        List<String> lines = new ArrayList<String>();
+        long end = written.get();
+        long start = Math.max(0L, Math.max(end - capacity, end - limit));
+        StringBuilder line = new StringBuilder(128);
+        SimpleDateFormat timeFormat = new SimpleDateFormat(TIME_PATTERN);
+        for (long sequence = end - 1; sequence >= start; sequence--) {
+            line.setLength(0);
+            if (format(sequence, line, timeFormat)) {
+                lines.add(line.toString());
+            }
+        }
+        return lines;
+    }
+
+    public synchronized void startExporter(File file, final Logger logger) throws IOException {
+        if (exporter != null) {
+            return;
+        }
+        exportWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        exported = written.get();
+        exporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ToughTools-CollapseTrace");
+            thread.setDaemon(true);
+            return thread;
+        });
+        exporter.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not export collapse trace", e);
+            }
+        }, EXPORT_INTERVAL_SECONDS, EXPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public synchronized void close() {
+        if (exporter == null) {
+            return;
+        }
+        exporter.shutdown();
+        try {
+            exporter.awaitTermination(5L, TimeUnit.SECONDS);
+            flush();
+            exportWriter.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ignored) {
+            // Nothing more to do while shutting down.
+        }
+        exporter = null;
+        exportWriter = null;
+    }
+
+    private synchronized void flush() throws IOException {
+        if (exportWriter == null) {
+            return;
+        }
+        long end = written.get();
+        if (end - exported > capacity) {
+            exportWriter.write("# " + (end - exported - capacity) + " records overwritten before export\n");
+            exported = end - capacity;
+        }
+        StringBuilder line = new StringBuilder(128);
+        SimpleDateFormat timeFormat = new SimpleDateFormat(TIME_PATTERN);
+        for (; exported < end; exported++) {
+            line.setLength(0);
+            if (format(exported, line, timeFormat)) {
+                exportWriter.append(line).append('\n');
+            }
+        }
+        exportWriter.flush();
+    }
+
+    private boolean format(long sequence, StringBuilder out, SimpleDateFormat timeFormat) {
+        int slot = (int) (sequence % capacity);
+        long time = 0L;
+        String world = null;
+        int x = 0;
+        int y = 0;
+        int z = 0;
+        int typeIndex = 0;
+        int layers = 0;
+        int airRunX = 0;
+        int airRunZ = 0;
+        int support = 0;
+        int blocks = 0;
+        long elapsed = 0L;
+        boolean copied = false;
+        for (int attempt = 0; attempt < READ_ATTEMPTS && !copied; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (sequences[slot] != sequence) {
+                // Not written yet or already overwritten; only trust that once the read validates.
+                if (lock.validate(stamp)) {
+                    return false;
+                }
+                continue;
+            }
+            time = times[slot];
+            world = worlds[slot];
+            x = xs[slot];
+            y = ys[slot];
+            z = zs[slot];
+            typeIndex = types[slot];
+            layers = layerFlags[slot] & 0xFF;
+            airRunX = airRunsX[slot];
+            airRunZ = airRunsZ[slot];
+            support = supports[slot];
+            blocks = spawned[slot];
+            elapsed = nanos[slot];
+            copied = lock.validate(stamp);
+        }
+        if (!copied) {
+            return false;
+        }
+        CollapseType type = TYPES[typeIndex];
+
+        out.append(timeFormat.format(new Date(time)))
+                .append(' ').append(type)
+                .append(' ').append(world).append(' ').append(x).append(',').append(y).append(',').append(z)
+                .append(" layers=");
+        if ((layers & BreakContext.LAYERS_EVALUATED) == 0) {
+            out.append('-');
+        } else {
+            for (int i = 0; i < 4; i++) {
+                out.append((layers & (1 << i)) != 0 ? 'S' : 'U');
+            }
+        }
+        out.append(" airRunX=").append(airRunX)
+                .append(" airRunZ=").append(airRunZ)
+                .append(" support=").append(support == BreakContext.SUPPORT_FOUND ? "found"
+                        : support == BreakContext.SUPPORT_MISSING ? "none" : "-")
+                .append(" spawned=").append(blocks)
+                .append(" time=").append(elapsed / 1000L).append("us");
+        return true;
+    }
+}
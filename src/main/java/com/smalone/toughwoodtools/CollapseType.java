@@ -0,0 +1,13 @@
+package com.smalone.toughwoodtools;
+
+/**
+ * Outcome of evaluating a block break against the collapse rules.
+ */
+public enum CollapseType {
+    NONE,
+    CAVE_CEILING,
+    VERTICAL_SHAFT,
+    TUNNEL_X,
+    TUNNEL_Z,
+    UNSUPPORTED_CEILING
+}
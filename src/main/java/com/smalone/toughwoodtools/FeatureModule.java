@@ -0,0 +1,27 @@
+package com.smalone.toughwoodtools;
+
+/**
+ * Independently toggleable plugin features, configured under {@code modules.<key>} in config.yml.
+ */
+public enum FeatureModule {
+    TOOL_BUFFS("tool-buffs", "ToughTools enabled: empowering wooden axes."),
+    INSTANT_WHEAT("instant-wheat", "InstantWheatListener enabled: wheat matures in ~1s after planting."),
+    MINING_COLLAPSE("mining-collapse", "MiningCollapseListener enabled: unstable ceilings may collapse."),
+    GAMEPLAY("gameplay", "GameplayListener enabled: random spawns, bed rules and spectator platform.");
+
+    private final String key;
+    private final String enableMessage;
+
+    FeatureModule(String key, String enableMessage) {
+        this.key = key;
+        this.enableMessage = enableMessage;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getEnableMessage() {
+        return enableMessage;
+    }
+}
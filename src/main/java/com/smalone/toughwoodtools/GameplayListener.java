@@ -1,12 +1,12 @@
 package com.smalone.toughwoodtools;
 
-import java.util.HashSet;
+import java.io.File;
 import java.util.Random;
-import java.util.Set;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.Chunk;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.entity.EntityType;
@@ -20,38 +20,56 @@ import org.bukkit.event.inventory.CraftItemEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkPopulateEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.event.block.Action;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.PlayerInventory;
 
-public class GameplayListener implements Listener {
+public class GameplayListener implements Listener, ModuleLifecycle {
 
     private final ToughTools plugin;
     private final Random random = new Random();
-    private final Set<String> platformBlocks = new HashSet<String>();
+    private final PlatformProtection platform = new PlatformProtection();
+    private final VillageSuppression villages;
     private Location spectatorCenter;
-    private static final int SPECTATOR_PLATFORM_Y = 110;
-    private static final int SPECTATOR_PLATFORM_HALF_SIZE = 25; // results in 50x50 footprint
-    private static final int SPECTATOR_PLATFORM_HEIGHT = 10;
+    private boolean blockVillageBreeding;
+    static final int SPECTATOR_PLATFORM_Y = 110;
+    static final int SPECTATOR_PLATFORM_HALF_SIZE = 25; // results in 50x50 footprint
+    static final int SPECTATOR_PLATFORM_HEIGHT = 10;
+    private static final int RANDOM_SPAWN_ATTEMPTS = 10;
 
     public GameplayListener(ToughTools plugin) {
         this.plugin = plugin;
+        this.villages = new VillageSuppression(new File(plugin.getDataFolder(), "villages"), plugin.getLogger());
+    }
+
+    @Override
+    public void onModuleEnable() {
+        onConfigReload();
+    }
+
+    @Override
+    public void onModuleDisable() {
+        villages.unloadAll();
+    }
+
+    @Override
+    public void onConfigReload() {
+        blockVillageBreeding = plugin.getConfig().getBoolean("village-block-breeding", false);
     }
 
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
-        if (player.hasPlayedBefore()) {
+        if (player.hasPlayedBefore() || !isEnabledIn(player.getWorld())) {
             return;
         }
 
         World world = getMainWorld();
         if (world != null) {
-            Location spawn = world.getSpawnLocation();
-            Location target = findRandomSpawn(world, spawn);
-            if (target != null) {
-                player.teleport(target);
-            }
+            teleportToRandomSpawn(player, world, world.getSpawnLocation(), RANDOM_SPAWN_ATTEMPTS);
         }
 
         giveStartingBed(player);
@@ -60,13 +78,14 @@ public class GameplayListener implements Listener {
     @EventHandler
     public void onPlayerRespawn(PlayerRespawnEvent event) {
         Player player = event.getPlayer();
+        if (!isEnabledIn(player.getWorld())) {
+            return;
+        }
         Location bedSpawn = player.getBedSpawnLocation();
-        if (bedSpawn != null) {
-            Block bedBlock = findNearbyBedBlock(bedSpawn, 2);
-            if (bedBlock != null) {
-                event.setRespawnLocation(bedSpawn);
-                return;
-            }
+        // Bed spawns are set as forced, so the server never checks that the bed still exists.
+        if (bedSpawn != null && bedSpawn.getWorld() != null && findNearbyBedBlock(bedSpawn, 2) != null) {
+            event.setRespawnLocation(bedSpawn);
+            return;
         }
 
         World world = getMainWorld();
@@ -87,7 +106,7 @@ public class GameplayListener implements Listener {
         if (result == null) {
             return;
         }
-        if (result.getType() != Material.BED) {
+        if (result.getType() != Material.BED || !isEnabledIn(event.getWhoClicked().getWorld())) {
             return;
         }
 
@@ -97,17 +116,60 @@ public class GameplayListener implements Listener {
         }
     }
 
+    /**
+     * Villages generate their villagers while the chunk is populated; strip them there so the village
+     * never has residents to breed or summon golems.
+     */
+    @EventHandler
+    public void onChunkPopulate(ChunkPopulateEvent event) {
+        Chunk chunk = event.getChunk();
+        if (isEnabledIn(chunk.getWorld())) {
+            villages.stripPopulated(chunk);
+        }
+    }
+
+    /**
+     * Chunks already known to be village chunks lose any villagers saved in them; other chunks are left
+     * alone so villagers and golems elsewhere, including player-built golems, survive.
+     */
+    @EventHandler
+    public void onChunkLoad(ChunkLoadEvent event) {
+        Chunk chunk = event.getChunk();
+        if (!event.isNewChunk() && isEnabledIn(chunk.getWorld())) {
+            villages.stripKnown(chunk);
+        }
+    }
+
+    @EventHandler
+    public void onWorldUnload(WorldUnloadEvent event) {
+        villages.unload(event.getWorld().getName());
+    }
+
     @EventHandler
     public void onCreatureSpawn(CreatureSpawnEvent event) {
         EntityType type = event.getEntityType();
-        SpawnReason reason = event.getSpawnReason();
+        if (type != EntityType.VILLAGER && type != EntityType.IRON_GOLEM) {
+            return;
+        }
+        Location location = event.getLocation();
+        World world = location.getWorld();
+        if (!isEnabledIn(world)) {
+            return;
+        }
 
-        if (type == EntityType.VILLAGER && isVillageRelatedSpawn(reason)) {
-            event.setCancelled(true);
+        SpawnReason reason = event.getSpawnReason();
+        int chunkX = location.getBlockX() >> 4;
+        int chunkZ = location.getBlockZ() >> 4;
+        if (villages.isVillageChunk(world.getName(), chunkX, chunkZ)) {
+            if (isVillageRelatedSpawn(reason) || (blockVillageBreeding && reason == SpawnReason.BREEDING)) {
+                event.setCancelled(true);
+            }
             return;
         }
 
-        if (type == EntityType.IRON_GOLEM && isVillageRelatedSpawn(reason)) {
+        if (isVillageRelatedSpawn(reason)) {
+            // Only villages attempt these spawns, so remember the chunk for the next attempt.
+            villages.markVillageChunk(world.getName(), chunkX, chunkZ);
             event.setCancelled(true);
         }
     }
@@ -115,7 +177,7 @@ public class GameplayListener implements Listener {
     @EventHandler
     public void onBlockBreak(BlockBreakEvent event) {
         Block block = event.getBlock();
-        if (isPlatformBlock(block)) {
+        if (isEnabledIn(block.getWorld()) && isPlatformBlock(block)) {
             event.setCancelled(true);
         }
     }
@@ -127,7 +189,7 @@ public class GameplayListener implements Listener {
         }
 
         Block clicked = event.getClickedBlock();
-        if (clicked == null || clicked.getType() != Material.BED_BLOCK) {
+        if (clicked == null || clicked.getType() != Material.BED_BLOCK || !isEnabledIn(clicked.getWorld())) {
             return;
         }
 
@@ -141,29 +203,50 @@ public class GameplayListener implements Listener {
         player.sendMessage("Your spawn point has been set to this bed.");
     }
 
+    private boolean isEnabledIn(World world) {
+        return plugin.getModules().isEnabled(FeatureModule.GAMEPLAY, world);
+    }
+
     private boolean isPlatformBlock(Block block) {
-        String key = buildKey(block.getLocation());
-        return platformBlocks.contains(key);
+        return platform.isProtected(block.getWorld().getName(), block.getX(), block.getY(), block.getZ());
     }
 
-    private Location findRandomSpawn(World world, Location center) {
+    /**
+     * Pick a random dry surface spot within 200 blocks of the center. Candidate columns in unloaded
+     * chunks are checked once the chunk guard has them loaded rather than forcing a load here; a
+     * candidate in a chunk that is not generated yet counts as a failed attempt.
+     */
+    private void teleportToRandomSpawn(Player player, World world, Location center, int attemptsLeft) {
+        if (!player.isOnline()) {
+            return;
+        }
         Location fallback = center.clone().add(0.5D, 0.0D, 0.5D);
-        for (int attempt = 0; attempt < 10; attempt++) {
-            double radius = random.nextDouble() * 200.0D;
-            double angle = random.nextDouble() * Math.PI * 2.0D;
-            int x = center.getBlockX() + (int) Math.round(radius * Math.cos(angle));
-            int z = center.getBlockZ() + (int) Math.round(radius * Math.sin(angle));
+        if (attemptsLeft <= 0) {
+            player.teleport(fallback);
+            return;
+        }
+
+        double radius = random.nextDouble() * 200.0D;
+        double angle = random.nextDouble() * Math.PI * 2.0D;
+        int x = center.getBlockX() + (int) Math.round(radius * Math.cos(angle));
+        int z = center.getBlockZ() + (int) Math.round(radius * Math.sin(angle));
 
+        boolean queued = plugin.getChunkGuard().runWhenLoaded(world, x, z, x, z, () -> {
+            if (!player.isOnline()) {
+                return;
+            }
             Block highest = world.getHighestBlockAt(x, z);
             Material type = highest.getType();
-            if (type == Material.WATER || type == Material.STATIONARY_WATER
-                    || type == Material.LAVA || type == Material.STATIONARY_LAVA) {
-                continue;
+            if (MaterialTable.isLiquid(type)) {
+                teleportToRandomSpawn(player, world, center, attemptsLeft - 1);
+                return;
             }
 
-            return highest.getLocation().add(0.5D, 1.0D, 0.5D);
+            player.teleport(highest.getLocation().add(0.5D, 1.0D, 0.5D));
+        }, () -> teleportToRandomSpawn(player, world, center, attemptsLeft - 1));
+        if (!queued) {
+            player.teleport(fallback);
         }
-        return fallback;
     }
 
     private void giveStartingBed(Player player) {
@@ -181,8 +264,12 @@ public class GameplayListener implements Listener {
         int oz = loc.getBlockZ();
 
         for (int dx = -radius; dx <= radius; dx++) {
-            for (int dy = -radius; dy <= radius; dy++) {
-                for (int dz = -radius; dz <= radius; dz++) {
+            for (int dz = -radius; dz <= radius; dz++) {
+                // Only look in loaded chunks; a bed that cannot be seen counts as missing.
+                if (!world.isChunkLoaded((ox + dx) >> 4, (oz + dz) >> 4)) {
+                    continue;
+                }
+                for (int dy = -radius; dy <= radius; dy++) {
                     Block block = world.getBlockAt(ox + dx, oy + dy, oz + dz);
                     if (block.getType() == Material.BED_BLOCK) {
                         return block;
@@ -210,15 +297,26 @@ public class GameplayListener implements Listener {
     }
 
     private Location ensureSpectatorPlatform(World world) {
-        Location spawn = world.getSpawnLocation();
-        int yFloor = Math.max(1, Math.min(SPECTATOR_PLATFORM_Y, world.getMaxHeight() - SPECTATOR_PLATFORM_HEIGHT));
-        int centerX = spawn.getBlockX();
-        int centerZ = spawn.getBlockZ();
-
         if (spectatorCenter != null) {
             return spectatorCenter.clone();
         }
 
+        Location spawn = world.getSpawnLocation();
+        int centerX = spawn.getBlockX();
+        int centerZ = spawn.getBlockZ();
+        int yFloor = buildSpectatorPlatform(new BukkitVoxelAccess(world), world.getName(), platform, centerX, centerZ);
+        spectatorCenter = new Location(world, centerX + 0.5D, yFloor + 1, centerZ + 0.5D);
+        return spectatorCenter.clone();
+    }
+
+    /**
+     * Build the glass spectator box around the given column and register its blocks as protected.
+     *
+     * @return the y of the platform floor
+     */
+    static int buildSpectatorPlatform(VoxelAccess world, String worldName, PlatformProtection platform,
+            int centerX, int centerZ) {
+        int yFloor = Math.max(1, Math.min(SPECTATOR_PLATFORM_Y, world.getMaxHeight() - SPECTATOR_PLATFORM_HEIGHT));
         int startX = centerX - SPECTATOR_PLATFORM_HALF_SIZE;
         int endX = centerX + SPECTATOR_PLATFORM_HALF_SIZE - 1;
         int startZ = centerZ - SPECTATOR_PLATFORM_HALF_SIZE;
@@ -229,41 +327,39 @@ public class GameplayListener implements Listener {
         // Build floor
         for (int x = startX; x <= endX; x++) {
             for (int z = startZ; z <= endZ; z++) {
-                setGlass(world, x, yFloor, z);
+                setGlass(world, worldName, platform, x, yFloor, z);
             }
         }
 
         // Build walls
         for (int y = yFloor; y <= yRoof; y++) {
             for (int x = startX; x <= endX; x++) {
-                setGlass(world, x, y, startZ);
-                setGlass(world, x, y, endZ);
+                setGlass(world, worldName, platform, x, y, startZ);
+                setGlass(world, worldName, platform, x, y, endZ);
             }
             for (int z = startZ; z <= endZ; z++) {
-                setGlass(world, startX, y, z);
-                setGlass(world, endX, y, z);
+                setGlass(world, worldName, platform, startX, y, z);
+                setGlass(world, worldName, platform, endX, y, z);
             }
         }
 
         // Build roof
         for (int x = startX; x <= endX; x++) {
             for (int z = startZ; z <= endZ; z++) {
-                setGlass(world, x, yRoof, z);
+                setGlass(world, worldName, platform, x, yRoof, z);
             }
         }
 
-        spectatorCenter = new Location(world, centerX + 0.5D, yFloor + 1, centerZ + 0.5D);
-        Block interior = world.getBlockAt(centerX, yFloor + 1, centerZ);
-        if (interior.getType() != Material.AIR) {
-            interior.setType(Material.AIR);
+        if (world.getType(centerX, yFloor + 1, centerZ) != Material.AIR) {
+            world.setAir(centerX, yFloor + 1, centerZ);
         }
-        return spectatorCenter.clone();
+        return yFloor;
     }
 
-    private void setGlass(World world, int x, int y, int z) {
-        Block block = world.getBlockAt(x, y, z);
-        block.setType(Material.GLASS);
-        platformBlocks.add(buildKey(block.getLocation()));
+    private static void setGlass(VoxelAccess world, String worldName, PlatformProtection platform,
+            int x, int y, int z) {
+        world.setBlock(x, y, z, Material.GLASS, (byte) 0);
+        platform.add(worldName, x, y, z);
     }
 
     private boolean isVillageRelatedSpawn(SpawnReason reason) {
@@ -278,9 +374,4 @@ public class GameplayListener implements Listener {
         }
         return world;
     }
-
-    private String buildKey(Location location) {
-        return location.getWorld().getName() + ":" + location.getBlockX() + ":" + location.getBlockY()
-                + ":" + location.getBlockZ();
-    }
 }
@@ -0,0 +1,181 @@
+package com.smalone.toughwoodtools;
+
+import java.util.Random;
+
+import org.bukkit.Material;
+
+/**
+ * Array-backed voxel world for headless simulation. Terrain is plain layered stone with scattered
+ * ores and carved caves; falling blocks land instantly on the first solid block below them.
+ */
+public class GeneratedVoxelWorld implements VoxelAccess {
+
+    private static final Material[] MATERIALS = Material.values();
+
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+    private final byte[] types;
+    private final byte[] data;
+    private final int[] heights;
+    private long fallingBlocks;
+
+    public GeneratedVoxelWorld(int sizeX, int sizeY, int sizeZ, long seed) {
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.types = new byte[sizeX * sizeY * sizeZ];
+        this.data = new byte[types.length];
+        this.heights = new int[sizeX * sizeZ];
+        generate(new Random(seed));
+    }
+
+    public int getSizeX() {
+        return sizeX;
+    }
+
+    public int getSizeZ() {
+        return sizeZ;
+    }
+
+    public long getFallingBlocks() {
+        return fallingBlocks;
+    }
+
+    @Override
+    public Material getType(int x, int y, int z) {
+        if (!contains(x, y, z)) {
+            return Material.AIR;
+        }
+        return MATERIALS[types[index(x, y, z)] & 0xFF];
+    }
+
+    @Override
+    public byte getData(int x, int y, int z) {
+        return contains(x, y, z) ? data[index(x, y, z)] : 0;
+    }
+
+    @Override
+    public int getHighestBlockY(int x, int z) {
+        if (x < 0 || z < 0 || x >= sizeX || z >= sizeZ) {
+            return 0;
+        }
+        return heights[z * sizeX + x];
+    }
+
+    @Override
+    public int getMaxHeight() {
+        return sizeY;
+    }
+
+    @Override
+    public void setAir(int x, int y, int z) {
+        setBlock(x, y, z, Material.AIR, (byte) 0);
+    }
+
+    @Override
+    public void spawnFallingBlock(double x, double y, double z, Material type, byte data) {
+        fallingBlocks++;
+        int bx = (int) Math.floor(x);
+        int by = (int) Math.floor(y);
+        int bz = (int) Math.floor(z);
+        while (by > 0 && getType(bx, by - 1, bz) == Material.AIR) {
+            by--;
+        }
+        if (getType(bx, by, bz) == Material.AIR) {
+            setBlock(bx, by, bz, type, data);
+        }
+    }
+
+    @Override
+    public void setBlock(int x, int y, int z, Material type, byte value) {
+        if (!contains(x, y, z)) {
+            return;
+        }
+        int index = index(x, y, z);
+        types[index] = (byte) type.ordinal();
+        data[index] = value;
+
+        int column = z * sizeX + x;
+        if (type != Material.AIR && y >= heights[column]) {
+            heights[column] = y + 1;
+        } else if (type == Material.AIR && y == heights[column] - 1) {
+            int top = y;
+            while (top > 0 && types[index(x, top - 1, z)] == Material.AIR.ordinal()) {
+                top--;
+            }
+            heights[column] = top;
+        }
+    }
+
+    private boolean contains(int x, int y, int z) {
+        return x >= 0 && y >= 0 && z >= 0 && x < sizeX && y < sizeY && z < sizeZ;
+    }
+
+    private int index(int x, int y, int z) {
+        return (y * sizeZ + z) * sizeX + x;
+    }
+
+    private void generate(Random random) {
+        int surface = Math.min(sizeY - 8, 64);
+        for (int x = 0; x < sizeX; x++) {
+            for (int z = 0; z < sizeZ; z++) {
+                int top = surface + random.nextInt(3);
+                for (int y = 0; y < top; y++) {
+                    Material type;
+                    if (y == 0) {
+                        type = Material.BEDROCK;
+                    } else if (y < top - 4) {
+                        type = pickStone(random, y);
+                    } else if (y < top - 1) {
+                        type = Material.DIRT;
+                    } else {
+                        type = Material.GRASS;
+                    }
+                    types[index(x, y, z)] = (byte) type.ordinal();
+                }
+                heights[z * sizeX + x] = top;
+            }
+        }
+
+        int caves = sizeX * sizeZ / 512;
+        for (int i = 0; i < caves; i++) {
+            int cx = random.nextInt(sizeX);
+            int cy = 8 + random.nextInt(Math.max(1, surface - 20));
+            int cz = random.nextInt(sizeZ);
+            int radius = 2 + random.nextInt(3);
+            for (int dx = -radius; dx <= radius; dx++) {
+                for (int dy = -radius; dy <= radius; dy++) {
+                    for (int dz = -radius; dz <= radius; dz++) {
+                        if (dx * dx + dy * dy + dz * dz <= radius * radius && contains(cx + dx, cy + dy, cz + dz)) {
+                            types[index(cx + dx, cy + dy, cz + dz)] = (byte) Material.AIR.ordinal();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private Material pickStone(Random random, int y) {
+        int roll = random.nextInt(1000);
+        if (roll < 12) {
+            return Material.COAL_ORE;
+        }
+        if (roll < 18) {
+            return Material.IRON_ORE;
+        }
+        if (y < 32 && roll < 21) {
+            return Material.GOLD_ORE;
+        }
+        if (y < 16 && roll < 25) {
+            return Material.REDSTONE_ORE;
+        }
+        if (y < 16 && roll < 27) {
+            return Material.DIAMOND_ORE;
+        }
+        if (y < 30 && roll < 29) {
+            return Material.LAPIS_ORE;
+        }
+        return roll < 60 ? Material.COBBLESTONE : Material.STONE;
+    }
+}
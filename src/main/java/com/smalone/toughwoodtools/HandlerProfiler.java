@@ -0,0 +1,263 @@
+package com.smalone.toughwoodtools;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.bukkit.World;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockEvent;
+import org.bukkit.event.entity.EntityEvent;
+import org.bukkit.event.inventory.InventoryInteractEvent;
+import org.bukkit.event.player.PlayerEvent;
+import org.bukkit.event.world.WorldEvent;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Times the plugin's event handlers. Listeners are registered through {@link #register} instead of
+ * {@code registerEvents}, which wraps every {@link EventHandler} method in an executor that times one
+ * call in {@code sampleEvery} and adds it to a per-handler, per-world histogram.
+ *
+ * <p>Histograms use power-of-two nanosecond buckets in {@link AtomicLongArray}s, so recording never
+ * locks. Totals are scaled up by the sampling interval to estimate the full cost.</p>
+ */
+public class HandlerProfiler {
+
+    private static final int BUCKETS = 40;
+
+    private final Map<String, HandlerStats> handlers = new ConcurrentHashMap<String, HandlerStats>();
+    private volatile int sampleEvery;
+
+    public HandlerProfiler(int sampleEvery) {
+        this.sampleEvery = sampleEvery;
+    }
+
+    /**
+     * @param sampleEvery time one call in this many; 0 turns timing off
+     */
+    public void setSampleEvery(int sampleEvery) {
+        this.sampleEvery = Math.max(0, sampleEvery);
+    }
+
+    public int getSampleEvery() {
+        return sampleEvery;
+    }
+
+    /**
+     * Register every {@link EventHandler} method of the listener, the way {@code registerEvents} would.
+     */
+    public void register(Listener listener, Plugin plugin) {
+        for (Method method : listener.getClass().getMethods()) {
+            EventHandler handler = method.getAnnotation(EventHandler.class);
+            if (handler == null || method.getParameterTypes().length != 1
+                    || !Event.class.isAssignableFrom(method.getParameterTypes()[0])) {
+                continue;
+            }
+            Class<? extends Event> eventClass = method.getParameterTypes()[0].asSubclass(Event.class);
+            String name = listener.getClass().getSimpleName() + "." + method.getName();
+            HandlerStats stats = handlers.get(name);
+            if (stats == null) {
+                stats = new HandlerStats(name);
+                handlers.put(name, stats);
+            }
+            plugin.getServer().getPluginManager().registerEvent(eventClass, listener, handler.priority(),
+                    new TimedExecutor(method, eventClass, stats), plugin, handler.ignoreCancelled());
+        }
+    }
+
+    public void reset() {
+        for (HandlerStats stats : handlers.values()) {
+            stats.worlds.clear();
+        }
+    }
+
+    /**
+     * Describe the most expensive handlers, once ranked by estimated total time and once by p99.
+     *
+     * @param world only count samples from this world, or null for all worlds
+     */
+    public List<String> report(int count, String world) {
+        List<Summary> summaries = new ArrayList<Summary>();
+        for (HandlerStats stats : handlers.values()) {
+            Summary summary = new Summary(stats.name);
+            for (Map.Entry<String, Histogram> entry : stats.worlds.entrySet()) {
+                if (world == null || world.equals(entry.getKey())) {
+                    summary.add(entry.getValue());
+                }
+            }
+            if (summary.samples > 0) {
+                summaries.add(summary);
+            }
+        }
+
+        List<String> lines = new ArrayList<String>();
+        Collections.sort(summaries, new Comparator<Summary>() {
+            @Override
+            public int compare(Summary a, Summary b) {
+                return Long.compare(b.totalNanos, a.totalNanos);
+            }
+        });
+        lines.add("By total:");
+        for (int i = 0; i < Math.min(count, summaries.size()); i++) {
+            lines.add(summaries.get(i).describe());
+        }
+
+        Collections.sort(summaries, new Comparator<Summary>() {
+            @Override
+            public int compare(Summary a, Summary b) {
+                return Long.compare(b.percentile(0.99D), a.percentile(0.99D));
+            }
+        });
+        lines.add("By p99:");
+        for (int i = 0; i < Math.min(count, summaries.size()); i++) {
+            lines.add(summaries.get(i).describe());
+        }
+        return lines;
+    }
+
+    private static String worldOf(Event event) {
+        World world = null;
+        if (event instanceof BlockEvent) {
+            world = ((BlockEvent) event).getBlock().getWorld();
+        } else if (event instanceof PlayerEvent) {
+            world = ((PlayerEvent) event).getPlayer().getWorld();
+        } else if (event instanceof EntityEvent) {
+            world = ((EntityEvent) event).getEntity().getWorld();
+        } else if (event instanceof WorldEvent) {
+            world = ((WorldEvent) event).getWorld();
+        } else if (event instanceof InventoryInteractEvent) {
+            world = ((InventoryInteractEvent) event).getWhoClicked().getWorld();
+        }
+        return world == null ? "-" : world.getName();
+    }
+
+    private static int bucketOf(long nanos) {
+        return Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(Math.max(1L, nanos)));
+    }
+
+    private final class TimedExecutor implements EventExecutor {
+
+        private final Method method;
+        private final Class<? extends Event> eventClass;
+        private final HandlerStats stats;
+        /** Racy on async events, which only skews which call gets sampled. */
+        private int calls;
+
+        TimedExecutor(Method method, Class<? extends Event> eventClass, HandlerStats stats) {
+            this.method = method;
+            this.eventClass = eventClass;
+            this.stats = stats;
+        }
+
+        @Override
+        public void execute(Listener listener, Event event) throws EventException {
+            if (!eventClass.isInstance(event)) {
+                return;
+            }
+            int every = sampleEvery;
+            if (every <= 0 || ++calls < every) {
+                invoke(listener, event);
+                return;
+            }
+            calls = 0;
+            long start = System.nanoTime();
+            invoke(listener, event);
+            long elapsed = System.nanoTime() - start;
+            stats.histogram(worldOf(event)).record(elapsed, every);
+        }
+
+        private void invoke(Listener listener, Event event) throws EventException {
+            try {
+                method.invoke(listener, event);
+            } catch (InvocationTargetException e) {
+                throw new EventException(e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new EventException(e);
+            }
+        }
+    }
+
+    private static final class HandlerStats {
+
+        final String name;
+        final ConcurrentHashMap<String, Histogram> worlds = new ConcurrentHashMap<String, Histogram>();
+
+        HandlerStats(String name) {
+            this.name = name;
+        }
+
+        Histogram histogram(String world) {
+            Histogram histogram = worlds.get(world);
+            if (histogram == null) {
+                histogram = new Histogram();
+                Histogram raced = worlds.putIfAbsent(world, histogram);
+                if (raced != null) {
+                    histogram = raced;
+                }
+            }
+            return histogram;
+        }
+    }
+
+    private static final class Histogram {
+
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        final AtomicLong samples = new AtomicLong();
+        final AtomicLong estimatedNanos = new AtomicLong();
+
+        void record(long nanos, int weight) {
+            buckets.incrementAndGet(bucketOf(nanos));
+            samples.incrementAndGet();
+            estimatedNanos.addAndGet(nanos * weight);
+        }
+    }
+
+    private static final class Summary {
+
+        final String name;
+        final long[] buckets = new long[BUCKETS];
+        long samples;
+        long totalNanos;
+
+        Summary(String name) {
+            this.name = name;
+        }
+
+        void add(Histogram histogram) {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] += histogram.buckets.get(i);
+            }
+            samples += histogram.samples.get();
+            totalNanos += histogram.estimatedNanos.get();
+        }
+
+        /** Upper bound of the bucket holding the given fraction of samples. */
+        long percentile(double fraction) {
+            long target = (long) Math.ceil(samples * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= target) {
+                    return 2L << i;
+                }
+            }
+            return 2L << (BUCKETS - 1);
+        }
+
+        String describe() {
+            return String.format("%s: total %.1f ms, p50 < %.1f us, p99 < %.1f us (%d samples)", name,
+                    totalNanos / 1000000.0D, percentile(0.5D) / 1000.0D, percentile(0.99D) / 1000.0D, samples);
+        }
+    }
+}
@@ -3,14 +3,14 @@ package com.smalone.toughwoodtools;
 import org.bukkit.Material;
 import org.bukkit.CropState;
 import org.bukkit.block.Block;
-import org.bukkit.block.BlockState;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockPlaceEvent;
-import org.bukkit.material.Crops;
 
 public class InstantWheatListener implements Listener {
 
+    static final long RIPEN_DELAY_TICKS = 20L;
+
     private final ToughTools plugin;
 
     public InstantWheatListener(ToughTools plugin) {
@@ -22,22 +22,31 @@ public class InstantWheatListener implements Listener {
         Block placed = e.getBlockPlaced();
 
         // Wheat in 1.12 is the CROPS block
-        if (placed.getType() != Material.CROPS) {
+        if (placed.getType() != Material.CROPS
+                || !plugin.getModules().isEnabled(FeatureModule.INSTANT_WHEAT, placed.getWorld())) {
             return;
         }
 
         // schedule: 20 ticks ~ 1 second
         plugin.getServer().getScheduler().runTaskLater(plugin, () -> {
-            // recheck: block might have been broken/changed in the meantime
-            if (placed.getType() != Material.CROPS) return;
+            // skip if the chunk unloaded meanwhile; reading the block would force it to load again
+            if (!placed.getWorld().isChunkLoaded(placed.getX() >> 4, placed.getZ() >> 4)) return;
 
-            BlockState state = placed.getState();
-            if (!(state.getData() instanceof Crops)) return;
+            ripen(new BukkitVoxelAccess(placed.getWorld()), placed.getX(), placed.getY(), placed.getZ());
+        }, RIPEN_DELAY_TICKS);
+    }
 
-            Crops data = (Crops) state.getData();
-            data.setState(CropState.RIPE);   // fully grown
-            state.setData(data);
-            state.update(true, false);       // apply without physics
-        }, 20L);
+    /**
+     * Make the wheat at the position fully grown, without physics.
+     *
+     * @return false if the block is no longer wheat
+     */
+    @SuppressWarnings("deprecation")
+    static boolean ripen(VoxelAccess world, int x, int y, int z) {
+        // recheck: block might have been broken/changed in the meantime
+        if (world.getType(x, y, z) != Material.CROPS) return false;
+
+        world.setBlock(x, y, z, Material.CROPS, CropState.RIPE.getData());
+        return true;
     }
 }
@@ -0,0 +1,349 @@
+package com.smalone.toughwoodtools;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import org.bukkit.Material;
+
+/**
+ * Headless load generator: N virtual players strip-mine, tunnel, dig shafts and chase ore in a
+ * {@link GeneratedVoxelWorld} while every break goes through the real platform protection, cooldown
+ * and {@link MiningSafetyManager} rules. The spectator platform is built by
+ * {@link GameplayListener#buildSpectatorPlatform} and one in five players stands on it trying to break
+ * out. Players also plant wheat that {@link InstantWheatListener#ripen} grows after
+ * {@link InstantWheatListener#RIPEN_DELAY_TICKS}.
+ *
+ * <p>Simulated time advances 50ms per tick; ticks run back to back so the reported MSPT is the cost
+ * of the plugin logic alone.</p>
+ *
+ * <pre>java -cp spigot-api.jar:ToughTools.jar com.smalone.toughwoodtools.LoadGenerator [players=5,25,50,100,200] [ticks=1200] [seed]</pre>
+ */
+public final class LoadGenerator {
+
+    private static final String WORLD_NAME = "loadgen";
+    private static final long MILLIS_PER_TICK = 50L;
+    private static final int BREAK_INTERVAL_TICKS = 2;
+    private static final int PLANT_INTERVAL_TICKS = 100;
+    private static final int SUPPORT_INTERVAL_STEPS = 5;
+    private static final int MAX_PENDING_CROPS = 4096;
+
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) {
+        int[] playerCounts = {5, 25, 50, 100, 200};
+        if (args.length > 0) {
+            String[] parts = args[0].split(",");
+            playerCounts = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                playerCounts[i] = Integer.parseInt(parts[i].trim());
+            }
+        }
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 1200;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 12345L;
+
+        // Warm up the JIT so the first row is comparable with the rest.
+        new Simulation(playerCounts[0], seed).run(Math.min(ticks, 400));
+
+        System.out.println(String.format("%7s %8s %9s %9s %8s %7s %9s %9s %9s %9s %10s",
+                "players", "breaks", "protected", "collapses", "falling", "ripened", "p50 ms", "p95 ms", "p99 ms", "max ms", "alloc MB/s"));
+        for (int players : playerCounts) {
+            Result result = new Simulation(players, seed).run(ticks);
+            double seconds = ticks * MILLIS_PER_TICK / 1000.0D;
+            String alloc = result.allocatedBytes < 0 ? "n/a"
+                    : String.format("%.2f", result.allocatedBytes / seconds / (1024.0D * 1024.0D));
+            System.out.println(String.format("%7d %8d %9d %9d %8d %7d %9.3f %9.3f %9.3f %9.3f %10s",
+                    players, result.breaks, result.protectedBreaks, result.collapses, result.fallingBlocks,
+                    result.ripened,
+                    result.percentile(0.50D), result.percentile(0.95D), result.percentile(0.99D),
+                    result.percentile(1.0D), alloc));
+        }
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1L;
+    }
+
+    private enum Pattern {
+        STRIP_MINE,
+        TUNNEL,
+        SHAFT,
+        ORE,
+        /** Respawned on the spectator platform and digging at its glass. */
+        SPECTATOR
+    }
+
+    private static final class Result {
+        long[] tickNanos;
+        long breaks;
+        long protectedBreaks;
+        long collapses;
+        long fallingBlocks;
+        long ripened;
+        long allocatedBytes;
+
+        double percentile(double fraction) {
+            long[] sorted = tickNanos.clone();
+            Arrays.sort(sorted);
+            int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+            return sorted[Math.max(0, index)] / 1000000.0D;
+        }
+    }
+
+    private static final class VirtualPlayer {
+        final UUID id;
+        final Pattern pattern;
+        final int[] targets = new int[3 * 12];
+        int targetCount;
+        int targetIndex;
+        int x;
+        int y;
+        int z;
+        int dx;
+        int dz;
+        int steps;
+
+        VirtualPlayer(UUID id, Pattern pattern) {
+            this.id = id;
+            this.pattern = pattern;
+        }
+
+        void addTarget(int tx, int ty, int tz) {
+            targets[targetCount * 3] = tx;
+            targets[targetCount * 3 + 1] = ty;
+            targets[targetCount * 3 + 2] = tz;
+            targetCount++;
+        }
+    }
+
+    private static final class Simulation {
+        private final GeneratedVoxelWorld world;
+        private final MiningSafetyManager safetyManager =
+                new MiningSafetyManager(MiningCollapseListener.COLLAPSE_WHITELIST);
+        private final CollapseCooldowns cooldowns = new CollapseCooldowns(2000L);
+        private final PlatformProtection platform = new PlatformProtection();
+        private final BreakContext context = new BreakContext();
+        private final VirtualPlayer[] players;
+        private final Random random;
+        private final int[] cropQueue = new int[MAX_PENDING_CROPS * 4];
+        private int cropHead;
+        private int cropTail;
+        private long tick;
+        private final int platformFloor;
+        private long breaks;
+        private long protectedBreaks;
+        private long collapses;
+        private long ripened;
+
+        Simulation(int playerCount, long seed) {
+            this.random = new Random(seed);
+            this.world = new GeneratedVoxelWorld(256, 96, 256, seed);
+            this.platformFloor = GameplayListener.buildSpectatorPlatform(world, WORLD_NAME, platform,
+                    world.getSizeX() / 2, world.getSizeZ() / 2);
+            this.players = new VirtualPlayer[playerCount];
+            Pattern[] patterns = Pattern.values();
+            for (int i = 0; i < playerCount; i++) {
+                players[i] = new VirtualPlayer(new UUID(seed, i), patterns[i % patterns.length]);
+                respawn(players[i]);
+            }
+        }
+
+        Result run(int ticks) {
+            Result result = new Result();
+            result.tickNanos = new long[ticks];
+            long allocatedBefore = allocatedBytes();
+            for (int i = 0; i < ticks; i++) {
+                long start = System.nanoTime();
+                runTick();
+                result.tickNanos[i] = System.nanoTime() - start;
+                tick++;
+            }
+            long allocatedAfter = allocatedBytes();
+            result.allocatedBytes = allocatedBefore < 0 ? -1L : allocatedAfter - allocatedBefore;
+            result.breaks = breaks;
+            result.protectedBreaks = protectedBreaks;
+            result.collapses = collapses;
+            result.ripened = ripened;
+            result.fallingBlocks = world.getFallingBlocks();
+            return result;
+        }
+
+        private void runTick() {
+            ripenCrops();
+            for (int i = 0; i < players.length; i++) {
+                VirtualPlayer player = players[i];
+                if ((tick + i) % BREAK_INTERVAL_TICKS == 0) {
+                    act(player);
+                }
+                if ((tick + i) % PLANT_INTERVAL_TICKS == 0 && player.pattern != Pattern.SPECTATOR) {
+                    plantWheat(player);
+                }
+            }
+        }
+
+        private void act(VirtualPlayer player) {
+            while (player.targetIndex < player.targetCount) {
+                int offset = player.targetIndex * 3;
+                player.targetIndex++;
+                if (breakBlock(player, player.targets[offset], player.targets[offset + 1], player.targets[offset + 2])) {
+                    return;
+                }
+            }
+            advance(player);
+        }
+
+        private boolean breakBlock(VirtualPlayer player, int x, int y, int z) {
+            Material type = world.getType(x, y, z);
+            if (type == Material.AIR || type == Material.BEDROCK) {
+                return false;
+            }
+            breaks++;
+            if (platform.isProtected(WORLD_NAME, x, y, z)) {
+                protectedBreaks++;
+                return true;
+            }
+
+            long now = tick * MILLIS_PER_TICK;
+            if (!cooldowns.isCoolingDown(player.id, WORLD_NAME, x, y, z, now)) {
+                context.set(x, y, z, type).withPlayerPosition(player.x, player.y, player.z);
+                if (safetyManager.evaluateBreak(world, context) != CollapseType.NONE) {
+                    cooldowns.markCooldown(player.id, WORLD_NAME, x, y, z, now);
+                    collapses++;
+                }
+            }
+            world.setAir(x, y, z);
+            return true;
+        }
+
+        private void advance(VirtualPlayer player) {
+            if (player.pattern == Pattern.SPECTATOR) {
+                respawn(player);
+                return;
+            }
+            player.targetCount = 0;
+            player.targetIndex = 0;
+            if (player.pattern == Pattern.SHAFT) {
+                player.y--;
+            } else {
+                player.x += player.dx;
+                player.z += player.dz;
+            }
+            player.steps++;
+            if (player.x < 8 || player.z < 8 || player.x >= world.getSizeX() - 8 || player.z >= world.getSizeZ() - 8
+                    || player.y < 6) {
+                respawn(player);
+                return;
+            }
+            planTargets(player);
+        }
+
+        private void planTargets(VirtualPlayer player) {
+            int px = player.dz != 0 ? 1 : 0;
+            int pz = player.dx != 0 ? 1 : 0;
+            int ax = player.x + player.dx;
+            int az = player.z + player.dz;
+            switch (player.pattern) {
+                case SPECTATOR:
+                    // Dig down through the floor, then at the wall the player is facing.
+                    int half = GameplayListener.SPECTATOR_PLATFORM_HALF_SIZE;
+                    int wallX = player.dx > 0 ? world.getSizeX() / 2 + half - 1 : world.getSizeX() / 2 - half;
+                    int wallZ = player.dz > 0 ? world.getSizeZ() / 2 + half - 1 : world.getSizeZ() / 2 - half;
+                    player.addTarget(player.x, platformFloor, player.z);
+                    player.addTarget(player.dx != 0 ? wallX : player.x, player.y, player.dz != 0 ? wallZ : player.z);
+                    player.addTarget(player.dx != 0 ? wallX : player.x, player.y + 1,
+                            player.dz != 0 ? wallZ : player.z);
+                    break;
+                case SHAFT:
+                    player.addTarget(player.x, player.y - 1, player.z);
+                    break;
+                case TUNNEL:
+                    for (int side = -1; side <= 1; side++) {
+                        for (int h = 0; h <= 2; h++) {
+                            player.addTarget(ax + side * px, player.y + h, az + side * pz);
+                        }
+                    }
+                    if (player.steps % SUPPORT_INTERVAL_STEPS == 0) {
+                        world.setBlock(player.x + px, player.y + 1, player.z + pz, Material.WOOD, (byte) 0);
+                        world.setBlock(player.x - px, player.y + 1, player.z - pz, Material.WOOD, (byte) 0);
+                    }
+                    break;
+                case ORE:
+                    player.addTarget(ax, player.y, az);
+                    player.addTarget(ax, player.y + 1, az);
+                    for (int side = -1; side <= 1; side += 2) {
+                        for (int h = -1; h <= 2; h++) {
+                            int ox = ax + side * px;
+                            int oy = player.y + h;
+                            int oz = az + side * pz;
+                            Material type = world.getType(ox, oy, oz);
+                            if (type.name().endsWith("_ORE")) {
+                                player.addTarget(ox, oy, oz);
+                            }
+                        }
+                    }
+                    break;
+                default:
+                    player.addTarget(ax, player.y, az);
+                    player.addTarget(ax, player.y + 1, az);
+                    break;
+            }
+        }
+
+        private void respawn(VirtualPlayer player) {
+            if (player.pattern == Pattern.SPECTATOR) {
+                int inside = GameplayListener.SPECTATOR_PLATFORM_HALF_SIZE - 1;
+                player.x = world.getSizeX() / 2 - inside + random.nextInt(inside * 2 - 1);
+                player.z = world.getSizeZ() / 2 - inside + random.nextInt(inside * 2 - 1);
+                player.y = platformFloor + 1;
+            } else {
+                player.x = 16 + random.nextInt(world.getSizeX() - 32);
+                player.z = 16 + random.nextInt(world.getSizeZ() - 32);
+                player.y = player.pattern == Pattern.SHAFT ? 40 + random.nextInt(20) : 10 + random.nextInt(40);
+            }
+            boolean alongX = random.nextBoolean();
+            int direction = random.nextBoolean() ? 1 : -1;
+            player.dx = alongX ? direction : 0;
+            player.dz = alongX ? 0 : direction;
+            player.steps = 0;
+            player.targetCount = 0;
+            player.targetIndex = 0;
+            planTargets(player);
+        }
+
+        private void plantWheat(VirtualPlayer player) {
+            int x = player.x;
+            int z = player.z;
+            int y = world.getHighestBlockY(x, z);
+            if (y >= world.getMaxHeight() || ((cropTail + 1) % MAX_PENDING_CROPS) == cropHead) {
+                return;
+            }
+            world.setBlock(x, y, z, Material.CROPS, (byte) 0);
+            int offset = cropTail * 4;
+            cropQueue[offset] = (int) (tick + InstantWheatListener.RIPEN_DELAY_TICKS);
+            cropQueue[offset + 1] = x;
+            cropQueue[offset + 2] = y;
+            cropQueue[offset + 3] = z;
+            cropTail = (cropTail + 1) % MAX_PENDING_CROPS;
+        }
+
+        private void ripenCrops() {
+            while (cropHead != cropTail && cropQueue[cropHead * 4] <= tick) {
+                int offset = cropHead * 4;
+                int x = cropQueue[offset + 1];
+                int y = cropQueue[offset + 2];
+                int z = cropQueue[offset + 3];
+                if (InstantWheatListener.ripen(world, x, y, z)) {
+                    ripened++;
+                }
+                cropHead = (cropHead + 1) % MAX_PENDING_CROPS;
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.smalone.toughwoodtools;
+
+import java.util.List;
+
+/**
+ * Watch recent tick durations and step collapse processing down through {@link CollapseLoadLevel}s
+ * while the server lags, then back up once it has recovered.
+ *
+ * <p>Runs every tick on the main thread; the time between two runs is the length of the last tick.
+ * Escalation moves one level at a time and waits for a fresh window of samples; recovery requires
+ * the average to stay below the current level's threshold (minus a margin) for a configurable
+ * number of ticks.</p>
+ */
+public class LoadGovernor implements Runnable {
+
+    private static final int WINDOW = 40;
+    private static final double RECOVERY_MARGIN_MS = 2.0D;
+
+    private final ToughTools plugin;
+    private final double[] thresholdsMillis;
+    private final int recoverTicks;
+    private final long[] samples = new long[WINDOW];
+    private long sampleSum;
+    private int sampleCount;
+    private int sampleIndex;
+    private long lastRun;
+    private int ticksSinceTransition;
+    private int healthyTicks;
+    private CollapseLoadLevel level = CollapseLoadLevel.NORMAL;
+
+    public LoadGovernor(ToughTools plugin, List<Integer> thresholdsMillis, int recoverTicks) {
+        this.plugin = plugin;
+        this.recoverTicks = Math.max(1, recoverTicks);
+        int levels = CollapseLoadLevel.values().length - 1;
+        this.thresholdsMillis = new double[levels];
+        for (int i = 0; i < levels; i++) {
+            // Missing entries disable the remaining levels.
+            this.thresholdsMillis[i] = i < thresholdsMillis.size() ? thresholdsMillis.get(i) : Double.MAX_VALUE;
+        }
+    }
+
+    public CollapseLoadLevel getLevel() {
+        return level;
+    }
+
+    public double getAverageTickMillis() {
+        return sampleCount == 0 ? 50.0D : sampleSum / (double) sampleCount / 1000000.0D;
+    }
+
+    @Override
+    public void run() {
+        long now = System.nanoTime();
+        if (lastRun != 0L) {
+            record(now - lastRun);
+        }
+        lastRun = now;
+        ticksSinceTransition++;
+
+        if (sampleCount < WINDOW) {
+            return;
+        }
+
+        double average = getAverageTickMillis();
+        int ordinal = level.ordinal();
+        if (ordinal < thresholdsMillis.length && average > thresholdsMillis[ordinal] && ticksSinceTransition >= WINDOW) {
+            transition(CollapseLoadLevel.values()[ordinal + 1], average);
+            return;
+        }
+
+        if (ordinal > 0 && average < thresholdsMillis[ordinal - 1] - RECOVERY_MARGIN_MS) {
+            healthyTicks++;
+            if (healthyTicks >= recoverTicks) {
+                transition(CollapseLoadLevel.values()[ordinal - 1], average);
+            }
+        } else {
+            healthyTicks = 0;
+        }
+    }
+
+    private void record(long nanos) {
+        if (sampleCount == WINDOW) {
+            sampleSum -= samples[sampleIndex];
+        } else {
+            sampleCount++;
+        }
+        samples[sampleIndex] = nanos;
+        sampleSum += nanos;
+        sampleIndex = (sampleIndex + 1) % WINDOW;
+    }
+
+    private void transition(CollapseLoadLevel next, double average) {
+        plugin.getLogger().info(String.format("Collapse load level %s -> %s (average tick %.1fms)",
+                level, next, average));
+        level = next;
+        ticksSinceTransition = 0;
+        healthyTicks = 0;
+    }
+}
@@ -0,0 +1,65 @@
+package com.smalone.toughwoodtools;
+
+import java.util.Set;
+
+import org.bukkit.Material;
+
+/**
+ * Bit flags for every {@link Material}, indexed by ordinal, so block scans classify a block with one
+ * array load instead of set lookups and chains of comparisons. Each {@link MiningSafetyManager} builds
+ * one from its collapse whitelist; everything else asks the engine for it.
+ */
+public final class MaterialTable {
+
+    /** Part of the collapse whitelist: may fall or be refilled when a collapse happens. */
+    public static final int COLLAPSIBLE = 1;
+    public static final int ORE = 1 << 1;
+    /** Never moved by a collapse: bedrock and liquids. */
+    public static final int PROTECTED = 1 << 2;
+    /** Holds up a ceiling: solid, not air, not liquid and not protected. */
+    public static final int SUPPORT = 1 << 3;
+
+    private final byte[] flags;
+
+    /**
+     * Build a table whose {@link #COLLAPSIBLE} bit follows the given whitelist.
+     */
+    public MaterialTable(Set<Material> collapsible) {
+        Material[] materials = Material.values();
+        flags = new byte[materials.length];
+        for (Material type : materials) {
+            int value = 0;
+            if (collapsible.contains(type)) {
+                value |= COLLAPSIBLE;
+            }
+            if (type == Material.COAL_ORE || type == Material.IRON_ORE || type == Material.GOLD_ORE
+                    || type == Material.REDSTONE_ORE || type == Material.DIAMOND_ORE || type == Material.LAPIS_ORE) {
+                value |= ORE;
+            }
+            boolean protectedType = type == Material.BEDROCK || isLiquid(type);
+            if (protectedType) {
+                value |= PROTECTED;
+            }
+            if (type.isSolid() && type != Material.AIR && !protectedType) {
+                value |= SUPPORT;
+            }
+            flags[type.ordinal()] = (byte) value;
+        }
+    }
+
+    public boolean has(Material type, int flag) {
+        return (flags[type.ordinal()] & flag) != 0;
+    }
+
+    public boolean isCollapsible(Material type) {
+        return (flags[type.ordinal()] & COLLAPSIBLE) != 0;
+    }
+
+    /**
+     * Water or lava, still or flowing. Does not depend on the whitelist, so it needs no table.
+     */
+    public static boolean isLiquid(Material type) {
+        return type == Material.WATER || type == Material.STATIONARY_WATER
+                || type == Material.LAVA || type == Material.STATIONARY_LAVA;
+    }
+}
@@ -0,0 +1,246 @@
+package com.smalone.toughwoodtools;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.bukkit.Material;
+
+/**
+ * Collects the collapses of several evaluations into one plan instead of applying them directly.
+ *
+ * <p>Reads see blocks that are about to disappear (for example an explosion's block list) and
+ * blocks already planned for removal as air, and blocks planned for direct placement as their new
+ * type, so later evaluations build on earlier ones. Writes are buffered in preallocated arrays and
+ * deduplicated; once {@code maxFallingBlocks} blocks have been planned, further removals, placements
+ * and spawns are ignored so nothing is removed without its falling block.</p>
+ *
+ * <p>The plan is applied a tick after it was made, so every removal and placement remembers the type
+ * it expected to find and is skipped if the world has changed there since. A falling block or
+ * placement written right after a removal in the same column belongs to that removal; the two are
+ * applied or skipped together so a skipped position never duplicates or loses a block.</p>
+ */
+public class MergedCollapsePlan implements VoxelAccess {
+
+    private final VoxelAccess world;
+    private final Set<Long> vanishing;
+    private final int maxFallingBlocks;
+    /** Planned removals by position key, with the type each expects to remove. */
+    private final Map<Long, Material> removals = new LinkedHashMap<Long, Material>();
+    /** Planned placement index by position key. */
+    private final Map<Long, Integer> placed = new HashMap<Long, Integer>();
+    private final int[] placeXs;
+    private final int[] placeYs;
+    private final int[] placeZs;
+    private final Material[] placeTypes;
+    private final byte[] placeData;
+    /** Type each placement expects to overwrite, usually air. */
+    private final Material[] placeExpected;
+    /** Removal key each placement belongs to, valid where {@link #placeSourced} is set. */
+    private final long[] placeSources;
+    private final boolean[] placeSourced;
+    private int placements;
+    private final double[] spawnXs;
+    private final double[] spawnYs;
+    private final double[] spawnZs;
+    private final Material[] spawnTypes;
+    private final byte[] spawnData;
+    private final long[] spawnSources;
+    private final boolean[] spawnSourced;
+    private int spawns;
+    /** The last accepted removal, until a write claims it or another removal replaces it. */
+    private long openRemoval;
+    private boolean hasOpenRemoval;
+
+    public MergedCollapsePlan(VoxelAccess world, Set<Long> vanishing, int maxFallingBlocks) {
+        this.world = world;
+        this.vanishing = vanishing == null ? new HashSet<Long>() : vanishing;
+        this.maxFallingBlocks = Math.max(0, maxFallingBlocks);
+        this.placeXs = new int[this.maxFallingBlocks];
+        this.placeYs = new int[this.maxFallingBlocks];
+        this.placeZs = new int[this.maxFallingBlocks];
+        this.placeTypes = new Material[this.maxFallingBlocks];
+        this.placeData = new byte[this.maxFallingBlocks];
+        this.placeExpected = new Material[this.maxFallingBlocks];
+        this.placeSources = new long[this.maxFallingBlocks];
+        this.placeSourced = new boolean[this.maxFallingBlocks];
+        this.spawnXs = new double[this.maxFallingBlocks];
+        this.spawnYs = new double[this.maxFallingBlocks];
+        this.spawnZs = new double[this.maxFallingBlocks];
+        this.spawnTypes = new Material[this.maxFallingBlocks];
+        this.spawnData = new byte[this.maxFallingBlocks];
+        this.spawnSources = new long[this.maxFallingBlocks];
+        this.spawnSourced = new boolean[this.maxFallingBlocks];
+    }
+
+    static long key(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    public boolean isFull() {
+        return spawns + placements >= maxFallingBlocks;
+    }
+
+    public int getPlannedBlocks() {
+        return spawns + placements;
+    }
+
+    public boolean isEmpty() {
+        return removals.isEmpty() && placements == 0 && spawns == 0;
+    }
+
+    /**
+     * Write the merged plan to the target: removals first, then direct placements and falling blocks.
+     * Positions whose type changed since the plan was made are skipped together with the writes that
+     * belong to them.
+     */
+    public void applyTo(VoxelAccess target) {
+        Set<Long> stale = new HashSet<Long>();
+        for (Map.Entry<Long, Material> removal : removals.entrySet()) {
+            long key = removal.getKey();
+            if (target.getType(keyX(key), keyY(key), keyZ(key)) != removal.getValue()) {
+                stale.add(key);
+            }
+        }
+        boolean[] skipPlacement = new boolean[placements];
+        for (int i = 0; i < placements; i++) {
+            boolean sourceStale = placeSourced[i] && stale.contains(placeSources[i]);
+            if (sourceStale || target.getType(placeXs[i], placeYs[i], placeZs[i]) != placeExpected[i]) {
+                skipPlacement[i] = true;
+                if (placeSourced[i]) {
+                    // Keep the block where it is rather than removing it without its replacement.
+                    stale.add(placeSources[i]);
+                }
+            }
+        }
+
+        for (long key : removals.keySet()) {
+            if (!stale.contains(key)) {
+                target.setAir(keyX(key), keyY(key), keyZ(key));
+            }
+        }
+        for (int i = 0; i < placements; i++) {
+            if (!skipPlacement[i]) {
+                target.setBlock(placeXs[i], placeYs[i], placeZs[i], placeTypes[i], placeData[i]);
+            }
+        }
+        for (int i = 0; i < spawns; i++) {
+            if (!spawnSourced[i] || !stale.contains(spawnSources[i])) {
+                target.spawnFallingBlock(spawnXs[i], spawnYs[i], spawnZs[i], spawnTypes[i], spawnData[i]);
+            }
+        }
+    }
+
+    private static int keyX(long key) {
+        return (int) (key >> 38);
+    }
+
+    private static int keyY(long key) {
+        return (int) (key & 0xFFF);
+    }
+
+    private static int keyZ(long key) {
+        return (int) (key << 26 >> 38);
+    }
+
+    @Override
+    public Material getType(int x, int y, int z) {
+        long key = key(x, y, z);
+        Integer placement = placed.get(key);
+        if (placement != null) {
+            return placeTypes[placement];
+        }
+        if (vanishing.contains(key) || removals.containsKey(key)) {
+            return Material.AIR;
+        }
+        return world.getType(x, y, z);
+    }
+
+    @Override
+    public byte getData(int x, int y, int z) {
+        long key = key(x, y, z);
+        Integer placement = placed.get(key);
+        if (placement != null) {
+            return placeData[placement];
+        }
+        if (vanishing.contains(key) || removals.containsKey(key)) {
+            return 0;
+        }
+        return world.getData(x, y, z);
+    }
+
+    @Override
+    public int getHighestBlockY(int x, int z) {
+        return world.getHighestBlockY(x, z);
+    }
+
+    @Override
+    public int getMaxHeight() {
+        return world.getMaxHeight();
+    }
+
+    @Override
+    public void setAir(int x, int y, int z) {
+        if (isFull()) {
+            return;
+        }
+        long key = key(x, y, z);
+        Material expected = getType(x, y, z);
+        if (expected != Material.AIR && removals.put(key, expected) == null) {
+            openRemoval = key;
+            hasOpenRemoval = true;
+        }
+    }
+
+    @Override
+    public void setBlock(int x, int y, int z, Material type, byte data) {
+        long key = key(x, y, z);
+        Integer existing = placed.get(key);
+        if (existing != null) {
+            placeTypes[existing] = type;
+            placeData[existing] = data;
+            return;
+        }
+        if (isFull()) {
+            return;
+        }
+        placeExpected[placements] = getType(x, y, z);
+        placeSourced[placements] = claimRemoval(x, z);
+        placeSources[placements] = openRemoval;
+        placeXs[placements] = x;
+        placeYs[placements] = y;
+        placeZs[placements] = z;
+        placeTypes[placements] = type;
+        placeData[placements] = data;
+        placed.put(key, placements);
+        placements++;
+    }
+
+    @Override
+    public void spawnFallingBlock(double x, double y, double z, Material type, byte data) {
+        if (isFull()) {
+            return;
+        }
+        spawnSourced[spawns] = claimRemoval((int) Math.floor(x), (int) Math.floor(z));
+        spawnSources[spawns] = openRemoval;
+        spawnXs[spawns] = x;
+        spawnYs[spawns] = y;
+        spawnZs[spawns] = z;
+        spawnTypes[spawns] = type;
+        spawnData[spawns] = data;
+        spawns++;
+    }
+
+    /**
+     * Whether the open removal is in the given column; if so the caller's write belongs to it.
+     */
+    private boolean claimRemoval(int x, int z) {
+        if (!hasOpenRemoval || keyX(openRemoval) != x || keyZ(openRemoval) != z) {
+            return false;
+        }
+        hasOpenRemoval = false;
+        return true;
+    }
+}
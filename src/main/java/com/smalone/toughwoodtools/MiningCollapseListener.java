@@ -1,31 +1,60 @@
 package com.smalone.toughwoodtools;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.logging.Level;
 
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
-import org.bukkit.entity.FallingBlock;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.scheduler.BukkitTask;
 
 /**
  * Simulate ceiling collapses by turning overhead blocks into temporary falling blocks
  * when no nearby supports remain.
  */
-public class MiningCollapseListener implements Listener {
+public class MiningCollapseListener implements Listener, ModuleLifecycle {
+
+    private static final int MAX_DEFERRED = 512;
+    private static final int DEFERRED_PER_TICK = 4;
+    private static final int MAX_BLAST_ANCHORS = 12;
+    private static final int BLAST_ANCHOR_SPACING = 3;
 
     private final ToughTools plugin;
     private final MiningSafetyManager safetyManager;
-    private final Map<String, Long> cooldowns = new HashMap<String, Long>();
-    private final long cooldownMillis;
-    private static final EnumSet<Material> COLLAPSE_WHITELIST = EnumSet.of(
+    private final CollapseCooldowns cooldowns;
+    private final LoadGovernor governor;
+    private final ChunkGuard chunkGuard;
+    private final CollapseTraceBuffer trace;
+    private final boolean traceAll;
+    private final BreakContext context = new BreakContext();
+    private final BukkitVoxelAccess access = new BukkitVoxelAccess(null);
+    private final ArrayDeque<DeferredBreak> deferred = new ArrayDeque<DeferredBreak>();
+    private final CollapsePropagator propagator;
+    private final Map<String, MiningFatigueIndex> fatigue = new HashMap<String, MiningFatigueIndex>();
+    private final boolean fatigueEnabled;
+    private BukkitTask drainTask;
+    private BukkitTask propagateTask;
+    static final EnumSet<Material> COLLAPSE_WHITELIST = EnumSet.of(
             Material.DIRT,
             Material.STONE,
             Material.COBBLESTONE,
@@ -39,112 +68,374 @@ public class MiningCollapseListener implements Listener {
 
     public MiningCollapseListener(ToughTools plugin) {
         this.plugin = plugin;
-        this.cooldownMillis = plugin.getConfig().getLong("collapse-cooldown-ms", 2000L);
+        this.cooldowns = new CollapseCooldowns(plugin.getConfig().getLong("collapse-cooldown-ms", 2000L));
         this.safetyManager = new MiningSafetyManager(plugin, COLLAPSE_WHITELIST);
+        this.governor = plugin.getLoadGovernor();
+        this.chunkGuard = plugin.getChunkGuard();
+        this.trace = plugin.getCollapseTrace();
+        this.traceAll = plugin.getConfig().getBoolean("collapse-trace-all", false);
+        this.propagator = plugin.getConfig().getBoolean("cascade-enabled", true)
+                ? new CollapsePropagator(safetyManager, trace, governor,
+                        plugin.getConfig().getInt("cascade-max-depth", 3),
+                        plugin.getConfig().getInt("cascade-blocks-per-tick", 48),
+                        plugin.getConfig().getInt("cascade-max-volume", 256))
+                : null;
+        this.fatigueEnabled = plugin.getConfig().getBoolean("mining-fatigue-enabled", true);
+    }
+
+    @Override
+    public void onModuleEnable() {
+        if (governor != null && drainTask == null) {
+            drainTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::drainDeferred, 1L, 1L);
+        }
+        if (propagator != null && propagateTask == null) {
+            propagateTask = plugin.getServer().getScheduler().runTaskTimer(plugin, propagator, 1L, 1L);
+        }
+    }
+
+    @Override
+    public void onModuleDisable() {
+        if (drainTask != null) {
+            drainTask.cancel();
+            drainTask = null;
+        }
+        deferred.clear();
+        if (propagateTask != null) {
+            propagateTask.cancel();
+            propagateTask = null;
+        }
+        if (propagator != null) {
+            propagator.clear();
+        }
+        for (MiningFatigueIndex index : fatigue.values()) {
+            if (index == null) {
+                continue;
+            }
+            try {
+                index.close();
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Could not close mining fatigue index", e);
+            }
+        }
+        fatigue.clear();
+    }
+
+    /**
+     * Pick up the collapse shapes recompiled by the reload; the other collapse settings are read once when
+     * the listener is created.
+     */
+    @Override
+    public void onConfigReload() {
+        safetyManager.setShapes(plugin.getCollapseShapes());
     }
 
     @EventHandler
     public void onBlockBreak(BlockBreakEvent event) {
         Block broken = event.getBlock();
         Player player = event.getPlayer();
-        if (isCoolingDown(player, broken.getLocation())) {
+        World world = broken.getWorld();
+        if (!plugin.getModules().isEnabled(FeatureModule.MINING_COLLAPSE, world)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (cooldowns.isCoolingDown(player.getUniqueId(), world.getName(), broken.getX(), broken.getY(), broken.getZ(), now)) {
+            return;
+        }
+
+        int x = broken.getX();
+        int z = broken.getZ();
+        int reach = MiningSafetyManager.SCAN_REACH;
+        if (!ChunkGuard.isAreaLoaded(world, x - reach, z - reach, x + reach, z + reach)) {
+            final DeferredBreak entry = capture(broken, player);
+            // Mark now rather than after the evaluation so breaks here are not queued again meanwhile.
+            cooldowns.markCooldown(player.getUniqueId(), world.getName(), x, broken.getY(), z, now);
+            chunkGuard.runWhenLoaded(world, x - reach, z - reach, x + reach, z + reach, () -> evaluateDeferred(entry));
             return;
         }
 
-        boolean triggered = safetyManager.handleShaftAndTunnel(broken, player);
+        CollapseLoadLevel level = currentLevel();
+        if (level.deferEvaluations()) {
+            if (defer(broken, player)) {
+                cooldowns.markCooldown(player.getUniqueId(), world.getName(), x, broken.getY(), z, now);
+            }
+            return;
+        }
 
-        if (!triggered && COLLAPSE_WHITELIST.contains(broken.getType()) && !isProtected(broken)
-                && !hasSupports(broken)) {
-            triggerCollapse(broken);
-            triggered = true;
+        safetyManager.setLoadLevel(level);
+        CollapseType triggered = evaluate(world, context.set(broken, player));
+
+        if (triggered != CollapseType.NONE) {
+            cooldowns.markCooldown(player.getUniqueId(), world.getName(), broken.getX(), broken.getY(), broken.getZ(),
+                    System.currentTimeMillis());
         }
+    }
 
-        if (triggered) {
-            markCooldown(player, broken.getLocation());
+    /**
+     * Count the break towards mining fatigue once no other handler can cancel it any more.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBroken(BlockBreakEvent event) {
+        Block broken = event.getBlock();
+        World world = broken.getWorld();
+        if (!plugin.getModules().isEnabled(FeatureModule.MINING_COLLAPSE, world)) {
+            return;
+        }
+        MiningFatigueIndex fatigueIndex = fatigueIndex(world);
+        if (fatigueIndex != null) {
+            fatigueIndex.recordBreak(broken.getX(), broken.getY(), broken.getZ());
         }
     }
 
-    private boolean hasSupports(Block center) {
-        for (int dx = -1; dx <= 1; dx++) {
-            for (int dz = -1; dz <= 1; dz++) {
-                if (dx == 0 && dz == 0) {
-                    continue;
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        handleBlast(event.getLocation().getWorld(), event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        handleBlast(event.getBlock().getWorld(), event.blockList());
+    }
+
+    /**
+     * Evaluate a whole blast as one batch. Only the topmost collapsible block of each blasted column is
+     * a candidate, and candidates closer than {@link #BLAST_ANCHOR_SPACING} to an already chosen anchor
+     * are skipped; candidates are taken highest first, then by x and z, so a blast always picks the same
+     * anchors. Every anchor writes into the same {@link MergedCollapsePlan}, which sees the blasted
+     * blocks as air and shares one falling block cap, and the plan is applied once on the next tick
+     * after the explosion has removed its blocks.
+     */
+    private void handleBlast(World world, List<Block> blocks) {
+        if (world == null || blocks.isEmpty() || !plugin.getModules().isEnabled(FeatureModule.MINING_COLLAPSE, world)) {
+            return;
+        }
+        CollapseLoadLevel level = currentLevel();
+        if (level.deferEvaluations()) {
+            // Blasts are bursty; under heavy load they are shed rather than queued behind player breaks.
+            return;
+        }
+
+        Set<Long> blasted = new HashSet<Long>();
+        Map<Long, Block> topPerColumn = new HashMap<Long, Block>();
+        int minX = Integer.MAX_VALUE;
+        int minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxZ = Integer.MIN_VALUE;
+        for (Block block : blocks) {
+            int x = block.getX();
+            int z = block.getZ();
+            blasted.add(MergedCollapsePlan.key(x, block.getY(), z));
+            minX = Math.min(minX, x);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxZ = Math.max(maxZ, z);
+            if (!safetyManager.getMaterials().isCollapsible(block.getType())) {
+                continue;
+            }
+            Long column = MergedCollapsePlan.key(x, 0, z);
+            Block top = topPerColumn.get(column);
+            if (top == null || block.getY() > top.getY()) {
+                topPerColumn.put(column, block);
+            }
+        }
+
+        // Highest first, then by position, so the same blast always picks the same anchors.
+        List<Block> candidates = new ArrayList<Block>(topPerColumn.values());
+        Collections.sort(candidates, new Comparator<Block>() {
+            @Override
+            public int compare(Block a, Block b) {
+                if (a.getY() != b.getY()) {
+                    return Integer.compare(b.getY(), a.getY());
                 }
-                Block neighbor = center.getRelative(dx, 0, dz);
-                if (isSupportBlock(neighbor)) {
-                    return true;
+                if (a.getX() != b.getX()) {
+                    return Integer.compare(a.getX(), b.getX());
                 }
+                return Integer.compare(a.getZ(), b.getZ());
             }
-        }
-        return false;
-    }
-
-    private boolean isSupportBlock(Block block) {
-        Material type = block.getType();
-        return type != Material.AIR && !isLiquid(type) && type.isSolid() && !isProtected(block);
-    }
-
-    private void triggerCollapse(Block origin) {
-        World world = origin.getWorld();
-        for (int dx = -1; dx <= 1; dx++) {
-            for (int dz = -1; dz <= 1; dz++) {
-                int airStreak = 0;
-                for (int dy = 0; dy < world.getMaxHeight(); dy++) {
-                    Block target = origin.getRelative(dx, dy, dz);
-                    Material type = target.getType();
-                    if (type == Material.AIR) {
-                        airStreak++;
-                        if (airStreak >= 3) {
-                            break;
-                        }
-                        continue;
-                    }
-
-                    airStreak = 0;
-
-                    if (isProtected(target)) {
-                        continue;
-                    }
-
-                    byte data = target.getData();
-                    target.setType(Material.AIR);
-
-                    FallingBlock falling = world.spawnFallingBlock(target.getLocation().add(0.5D, 0.0D, 0.5D), type, data);
-                    try {
-                        falling.setDropItem(false);
-                        falling.setHurtEntities(false);
-                    } catch (NoSuchMethodError ignored) {
-                        // Older API revisions may not support these toggles; gravity is sufficient.
-                    }
+        });
+        List<int[]> anchors = new ArrayList<int[]>();
+        for (Block candidate : candidates) {
+            if (anchors.size() >= MAX_BLAST_ANCHORS) {
+                break;
+            }
+            boolean covered = false;
+            for (int[] anchor : anchors) {
+                if (Math.abs(anchor[0] - candidate.getX()) < BLAST_ANCHOR_SPACING
+                        && Math.abs(anchor[2] - candidate.getZ()) < BLAST_ANCHOR_SPACING) {
+                    covered = true;
+                    break;
                 }
             }
+            if (!covered) {
+                anchors.add(new int[] {candidate.getX(), candidate.getY(), candidate.getZ(), candidate.getType().ordinal()});
+            }
         }
+        if (anchors.isEmpty()) {
+            return;
+        }
+
+        int reach = MiningSafetyManager.SCAN_REACH;
+        final int bx0 = minX - reach;
+        final int bz0 = minZ - reach;
+        final int bx1 = maxX + reach;
+        final int bz1 = maxZ + reach;
+        chunkGuard.runWhenLoaded(world, bx0, bz0, bx1, bz1, () -> evaluateBlast(world, blasted, anchors));
     }
 
-    private boolean isProtected(Block block) {
-        Material type = block.getType();
-        return type == Material.BEDROCK || isLiquid(type);
+    private void evaluateBlast(World world, Set<Long> blasted, List<int[]> anchors) {
+        if (!plugin.getModules().isActive(FeatureModule.MINING_COLLAPSE)) {
+            return;
+        }
+        CollapseLoadLevel level = currentLevel();
+        safetyManager.setLoadLevel(level);
+        BukkitVoxelAccess access = new BukkitVoxelAccess(world);
+        MergedCollapsePlan plan = new MergedCollapsePlan(access, blasted, level.maxFallingBlocks());
+        Material[] materials = Material.values();
+        for (int[] anchor : anchors) {
+            if (plan.isFull()) {
+                break;
+            }
+            long start = System.nanoTime();
+            context.set(anchor[0], anchor[1], anchor[2], materials[anchor[3]]);
+            CollapseType triggered = safetyManager.evaluateBreak(plan, context);
+            if (triggered != CollapseType.NONE || traceAll) {
+                trace.record(world.getName(), context, triggered, System.nanoTime() - start);
+            }
+        }
+        if (plan.isEmpty()) {
+            return;
+        }
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            if (plugin.getModules().isActive(FeatureModule.MINING_COLLAPSE)) {
+                plan.applyTo(access);
+            }
+        });
     }
 
-    private boolean isLiquid(Material type) {
-        return type == Material.WATER || type == Material.STATIONARY_WATER
-                || type == Material.LAVA || type == Material.STATIONARY_LAVA;
+    private CollapseType evaluate(World world, BreakContext breakContext) {
+        long start = System.nanoTime();
+        MiningFatigueIndex fatigueIndex = fatigueIndex(world);
+        if (fatigueIndex != null) {
+            breakContext.fatigue = fatigueIndex.getLevel(breakContext.x, breakContext.y, breakContext.z);
+        }
+        VoxelAccess target = access.bind(world);
+        if (propagator != null) {
+            target = propagator.track(target);
+        }
+        CollapseType triggered = safetyManager.evaluateBreak(target, breakContext);
+        if (triggered != CollapseType.NONE || traceAll) {
+            trace.record(world.getName(), breakContext, triggered, System.nanoTime() - start);
+        }
+        if (triggered != CollapseType.NONE && propagator != null) {
+            propagator.seed(world, breakContext.spawned);
+        }
+        return triggered;
     }
 
-    private boolean isCoolingDown(Player player, Location location) {
-        String key = buildCooldownKey(player.getUniqueId(), location);
-        long now = System.currentTimeMillis();
-        Long last = cooldowns.get(key);
-        return last != null && now - last < cooldownMillis;
+    /**
+     * @return the world's fatigue index, opened on first use; null when disabled or the file failed to open
+     */
+    private MiningFatigueIndex fatigueIndex(World world) {
+        if (!fatigueEnabled) {
+            return null;
+        }
+        String name = world.getName();
+        if (fatigue.containsKey(name)) {
+            return fatigue.get(name);
+        }
+        MiningFatigueIndex index = null;
+        File file = new File(new File(plugin.getDataFolder(), "fatigue"), name + ".idx");
+        List<Integer> thresholds = plugin.getConfig().getIntegerList("mining-fatigue-thresholds");
+        int[] levels = new int[thresholds.size()];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = thresholds.get(i);
+        }
+        try {
+            index = new MiningFatigueIndex(file, plugin.getConfig().getInt("mining-fatigue-slots", 65536),
+                    plugin.getConfig().getInt("mining-fatigue-half-life-minutes", 1440), levels);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not open mining fatigue index " + file, e);
+        }
+        // Cache failures too so a broken file is not retried on every break.
+        fatigue.put(name, index);
+        return index;
+    }
+
+    private CollapseLoadLevel currentLevel() {
+        return governor == null ? CollapseLoadLevel.NORMAL : governor.getLevel();
     }
 
-    private void markCooldown(Player player, Location location) {
-        String key = buildCooldownKey(player.getUniqueId(), location);
-        cooldowns.put(key, System.currentTimeMillis());
+    /**
+     * @return false when the evaluation was shed instead of queued
+     */
+    private boolean defer(Block broken, Player player) {
+        if (deferred.size() >= MAX_DEFERRED) {
+            // Shed the evaluation entirely; the backlog is already larger than we can catch up on.
+            return false;
+        }
+        deferred.add(capture(broken, player));
+        return true;
+    }
+
+    private DeferredBreak capture(Block broken, Player player) {
+        DeferredBreak entry = new DeferredBreak();
+        entry.player = player.getUniqueId();
+        entry.world = broken.getWorld();
+        entry.x = broken.getX();
+        entry.y = broken.getY();
+        entry.z = broken.getZ();
+        entry.type = broken.getType();
+        Location pl = player.getLocation();
+        entry.hasPlayer = entry.world.equals(pl.getWorld());
+        entry.playerX = pl.getBlockX();
+        entry.playerY = pl.getBlockY();
+        entry.playerZ = pl.getBlockZ();
+        return entry;
+    }
+
+    private void drainDeferred() {
+        CollapseLoadLevel level = currentLevel();
+        if (deferred.isEmpty() || level.deferEvaluations()) {
+            return;
+        }
+
+        for (int i = 0; i < DEFERRED_PER_TICK && !deferred.isEmpty(); i++) {
+            DeferredBreak entry = deferred.poll();
+            int reach = MiningSafetyManager.SCAN_REACH;
+            chunkGuard.runWhenLoaded(entry.world, entry.x - reach, entry.z - reach, entry.x + reach, entry.z + reach,
+                    () -> evaluateDeferred(entry));
+        }
+    }
+
+    private void evaluateDeferred(DeferredBreak entry) {
+        if (!plugin.getModules().isActive(FeatureModule.MINING_COLLAPSE)) {
+            return;
+        }
+        if (entry.world.getBlockAt(entry.x, entry.y, entry.z).getType() != Material.AIR) {
+            // The break was cancelled, or the spot has been filled since; the rules would judge a different world.
+            return;
+        }
+        safetyManager.setLoadLevel(currentLevel());
+        context.set(entry.x, entry.y, entry.z, entry.type);
+        if (entry.hasPlayer) {
+            context.withPlayerPosition(entry.playerX, entry.playerY, entry.playerZ);
+        }
+        CollapseType triggered = evaluate(entry.world, context);
+        if (triggered != CollapseType.NONE) {
+            cooldowns.markCooldown(entry.player, entry.world.getName(), entry.x, entry.y, entry.z,
+                    System.currentTimeMillis());
+        }
     }
 
-    private String buildCooldownKey(UUID uuid, Location location) {
-        return uuid.toString() + ":" + location.getWorld().getName() + ":" + location.getBlockX()
-                + "," + location.getBlockY() + "," + location.getBlockZ();
+    private static final class DeferredBreak {
+        UUID player;
+        World world;
+        int x;
+        int y;
+        int z;
+        Material type;
+        boolean hasPlayer;
+        int playerX;
+        int playerY;
+        int playerZ;
     }
 }
@@ -0,0 +1,162 @@
+package com.smalone.toughwoodtools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Persistent count of block breaks per 16x16x16 chunk section, kept in a memory-mapped file so it
+ * survives restarts without living on the heap.
+ *
+ * <p>The file is a fixed-size open-addressing table: a 16 byte header followed by slots of
+ * {@code long key, int score, int minute}. Scores halve every {@code halfLifeMinutes}; when all probed
+ * slots are taken the weakest one is reused. Only the main thread writes, so updates are plain stores
+ * without locks; readers on other threads may see a slightly stale score, never a wrong key.</p>
+ */
+public class MiningFatigueIndex implements Closeable {
+
+    private static final int MAGIC = 0x4D464958; // "MFIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int SLOT_BYTES = 16;
+    private static final int MAX_PROBES = 8;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int slots;
+    private final int halfLifeMinutes;
+    private final int[] levelThresholds;
+
+    public MiningFatigueIndex(File path, int slots, int halfLifeMinutes, int[] levelThresholds) throws IOException {
+        this.slots = Integer.highestOneBit(Math.max(64, slots));
+        this.halfLifeMinutes = Math.max(1, halfLifeMinutes);
+        this.levelThresholds = levelThresholds;
+
+        File parent = path.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent);
+        }
+        long size = HEADER_BYTES + (long) this.slots * SLOT_BYTES;
+        boolean fresh = !path.isFile() || path.length() != size;
+        file = new RandomAccessFile(path, "rw");
+        if (fresh) {
+            // A missing file or one sized for another slot count starts over; the data is only a heuristic.
+            file.setLength(0L);
+            file.setLength(size);
+        }
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0L, size);
+        if (fresh || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            for (int i = 0; i < size; i += 8) {
+                buffer.putLong(i, 0L);
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, this.slots);
+        }
+    }
+
+    /**
+     * Count one block break. Main thread only.
+     */
+    public void recordBreak(int x, int y, int z) {
+        long key = key(x, y, z);
+        int now = currentMinute();
+        int start = slotOf(key);
+        int weakest = -1;
+        int weakestScore = Integer.MAX_VALUE;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int offset = offsetOf((start + probe) & (slots - 1));
+            long stored = buffer.getLong(offset);
+            if (stored == key) {
+                int minute = buffer.getInt(offset + 12);
+                int steps = (now - minute) / halfLifeMinutes;
+                int score = decay(buffer.getInt(offset + 8), steps);
+                buffer.putInt(offset + 8, score == Integer.MAX_VALUE ? score : score + 1);
+                buffer.putInt(offset + 12, minute + steps * halfLifeMinutes);
+                return;
+            }
+            if (stored == 0L) {
+                weakest = offset;
+                break;
+            }
+            int score = decay(buffer.getInt(offset + 8), (now - buffer.getInt(offset + 12)) / halfLifeMinutes);
+            if (score < weakestScore) {
+                weakestScore = score;
+                weakest = offset;
+            }
+        }
+        buffer.putInt(weakest + 8, 1);
+        buffer.putInt(weakest + 12, now);
+        buffer.putLong(weakest, key);
+    }
+
+    /**
+     * @return the decayed break count of the section containing the block
+     */
+    public int getScore(int x, int y, int z) {
+        long key = key(x, y, z);
+        int start = slotOf(key);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int offset = offsetOf((start + probe) & (slots - 1));
+            long stored = buffer.getLong(offset);
+            if (stored == key) {
+                int steps = (currentMinute() - buffer.getInt(offset + 12)) / halfLifeMinutes;
+                return decay(buffer.getInt(offset + 8), steps);
+            }
+            if (stored == 0L) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return how many of the configured thresholds the section's score has reached, from 0
+     */
+    public int getLevel(int x, int y, int z) {
+        int score = getScore(x, y, z);
+        int level = 0;
+        while (level < levelThresholds.length && score >= levelThresholds[level]) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Force the mapped index to disk and close it. Between closes the operating system writes the
+     * mapped pages back on its own, which survives a server crash but not a machine crash.
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    private static int decay(int score, int steps) {
+        return steps >= 31 ? 0 : score >> Math.max(0, steps);
+    }
+
+    private static int offsetOf(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    private int slotOf(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed >>> 32) & (slots - 1);
+    }
+
+    /** Section key; never 0 so an empty slot cannot match. */
+    private static long key(int x, int y, int z) {
+        long cx = (x >> 4) & 0x3FFFFFFL;
+        long cz = (z >> 4) & 0x3FFFFFFL;
+        long sy = (y >> 4) & 0xFL;
+        return ((cx << 30) | (cz << 4) | sy) + 1L;
+    }
+
+    private static int currentMinute() {
+        return (int) (System.currentTimeMillis() / 60000L);
+    }
+}
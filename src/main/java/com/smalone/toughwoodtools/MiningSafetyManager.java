@@ -3,155 +3,204 @@ package com.smalone.toughwoodtools;
 import java.util.EnumSet;
 import java.util.Set;
 
-import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.ChatColor;
-import org.bukkit.World;
-import org.bukkit.block.Block;
-import org.bukkit.entity.FallingBlock;
-import org.bukkit.entity.Player;
-
-public class MiningSafetyManager {
-
-    private final ToughTools plugin;
-    private final Set<Material> collapseWhitelist;
-    private static final EnumSet<Material> ORE_TYPES = EnumSet.of(
-            Material.COAL_ORE,
-            Material.IRON_ORE,
-            Material.GOLD_ORE,
-            Material.REDSTONE_ORE,
-            Material.DIAMOND_ORE,
-            Material.LAPIS_ORE
-    );
+
+public class MiningSafetyManager implements CollapseEngine {
+
+    /** Material flags with the collapsible bit taken from this manager's whitelist. */
+    private final MaterialTable materials;
+    private CollapseLoadLevel loadLevel = CollapseLoadLevel.NORMAL;
+    private CollapseShapes shapes;
+    private int spawnedThisEvaluation;
+    // Results of the last countHorizontalAirRun, kept in fields so the tunnel check does not allocate.
+    private int runPositive;
+    private int runNegative;
     private static final int REQUIRED_AIR_RUN = 6;
-    private static final int MAX_HORIZONTAL_HEIGHT = 6;
-    private static final int MAX_HORIZONTAL_DISTANCE = 6;
-    private static final int MAX_FALLING_BLOCKS = 90;
+    private static final int MIN_REQUIRED_AIR_RUN = 3;
+    static final int MAX_HORIZONTAL_DISTANCE = 6;
+    /** Farthest horizontal distance from the break that any rule reads or writes. */
+    static final int SCAN_REACH = MAX_HORIZONTAL_DISTANCE + 1;
 
     public MiningSafetyManager(ToughTools plugin, Set<Material> collapseWhitelist) {
-        this.plugin = plugin;
-        this.collapseWhitelist = collapseWhitelist == null ? EnumSet.noneOf(Material.class) : collapseWhitelist;
+        this(collapseWhitelist);
+        this.shapes = plugin.getCollapseShapes();
     }
 
-    public boolean handleShaftAndTunnel(Block broken, Player player) {
-        Material brokenType = broken.getType();
-        if (!collapseWhitelist.contains(brokenType)) {
-            return false;
+    /**
+     * Headless constructor for tools that run the collapse rules outside a server.
+     */
+    public MiningSafetyManager(Set<Material> collapseWhitelist) {
+        this.materials = new MaterialTable(collapseWhitelist == null ? EnumSet.noneOf(Material.class) : collapseWhitelist);
+        this.shapes = CollapseShapes.defaults();
+    }
+
+    public MaterialTable getMaterials() {
+        return materials;
+    }
+
+    public void setShapes(CollapseShapes shapes) {
+        this.shapes = shapes == null ? CollapseShapes.defaults() : shapes;
+    }
+
+    public CollapseLoadLevel getLoadLevel() {
+        return loadLevel;
+    }
+
+    /**
+     * Apply the restrictions of a load-shedding level to subsequent evaluations.
+     */
+    public void setLoadLevel(CollapseLoadLevel loadLevel) {
+        this.loadLevel = loadLevel == null ? CollapseLoadLevel.NORMAL : loadLevel;
+    }
+
+    /**
+     * Run every collapse rule for a broken block: the shaft, tunnel and cave-ceiling checks first,
+     * then the unsupported-ceiling fallback.
+     */
+    @Override
+    public CollapseType evaluateBreak(VoxelAccess world, BreakContext context) {
+        spawnedThisEvaluation = 0;
+        CollapseType type = handleShaftAndTunnel(world, context);
+        if (type == CollapseType.NONE && materials.has(context.type, MaterialTable.COLLAPSIBLE)
+                && !materials.has(context.type, MaterialTable.PROTECTED)
+                && !hasSupports(world, context.x, context.y, context.z)) {
+            triggerCollapse(world, context.x, context.y, context.z);
+            type = CollapseType.UNSUPPORTED_CEILING;
         }
+        context.spawned = spawnedThisEvaluation;
+        return type;
+    }
 
-        // Allow ores to be mined without vertical collapse penalties
-        if (ORE_TYPES.contains(brokenType)) {
-            World world = broken.getWorld();
-            Location origin = broken.getLocation();
-            boolean horizontalTriggered = triggerHorizontalIfNeeded(world, origin, Axis.X, player)
-                    || triggerHorizontalIfNeeded(world, origin, Axis.Z, player);
-            return horizontalTriggered;
+    /**
+     * Re-check a block left hanging by an earlier collapse. Only the structural rules apply: the tunnel
+     * cave-in and the unsupported-ceiling fallback. The cave-ceiling and shaft rules refill open space
+     * with new blocks as a penalty for the player's break, which would create material here.
+     */
+    public CollapseType evaluateExposed(VoxelAccess world, BreakContext context) {
+        spawnedThisEvaluation = 0;
+        CollapseType type = CollapseType.NONE;
+        if (materials.has(context.type, MaterialTable.COLLAPSIBLE)
+                && !materials.has(context.type, MaterialTable.PROTECTED)) {
+            if (triggerHorizontalIfNeeded(world, context, Axis.X)) {
+                type = CollapseType.TUNNEL_X;
+            } else if (triggerHorizontalIfNeeded(world, context, Axis.Z)) {
+                type = CollapseType.TUNNEL_Z;
+            } else if (!hasSupports(world, context.x, context.y, context.z)) {
+                triggerCollapse(world, context.x, context.y, context.z);
+                type = CollapseType.UNSUPPORTED_CEILING;
+            }
         }
+        context.spawned = spawnedThisEvaluation;
+        return type;
+    }
 
-        World world = broken.getWorld();
-        Location origin = broken.getLocation();
+    public CollapseType handleShaftAndTunnel(VoxelAccess world, BreakContext context) {
+        Material brokenType = context.type;
+        if (!materials.has(brokenType, MaterialTable.COLLAPSIBLE)) {
+            return CollapseType.NONE;
+        }
 
-        if (isDeepUnderground(origin, 6) && isCaveCeilingBreak(broken)) {
-            triggerCaveCeilingCollapse(world, origin, brokenType);
-            return true;
+        // Allow ores to be mined without vertical collapse penalties
+        if (materials.has(brokenType, MaterialTable.ORE)) {
+            if (triggerHorizontalIfNeeded(world, context, Axis.X)) {
+                return CollapseType.TUNNEL_X;
+            }
+            return triggerHorizontalIfNeeded(world, context, Axis.Z) ? CollapseType.TUNNEL_Z : CollapseType.NONE;
         }
 
-        if (triggerVerticalIfNeeded(world, origin, player)) {
-            return true;
+        if (isDeepUnderground(world, context.x, context.y, context.z, 6) && isCaveCeilingBreak(world, context)) {
+            triggerCaveCeilingCollapse(world, context.x, context.y, context.z, brokenType);
+            return CollapseType.CAVE_CEILING;
         }
 
-        if (triggerHorizontalIfNeeded(world, origin, Axis.X, player)) {
-            return true;
+        if (!loadLevel.skipVertical() && triggerVerticalIfNeeded(world, context)) {
+            return CollapseType.VERTICAL_SHAFT;
         }
 
-        return triggerHorizontalIfNeeded(world, origin, Axis.Z, player);
+        if (triggerHorizontalIfNeeded(world, context, Axis.X)) {
+            return CollapseType.TUNNEL_X;
+        }
+
+        return triggerHorizontalIfNeeded(world, context, Axis.Z) ? CollapseType.TUNNEL_Z : CollapseType.NONE;
     }
 
-    private boolean triggerVerticalIfNeeded(World world, Location origin, Player player) {
-        if (!isDeepUnderground(origin, 6)) {
+    private boolean triggerVerticalIfNeeded(VoxelAccess world, BreakContext context) {
+        int ox = context.x;
+        int oy = context.y;
+        int oz = context.z;
+        if (!isDeepUnderground(world, ox, oy, oz, 6)) {
             return false;
         }
 
-        boolean layer1Stable = isLayerStable(world, origin, 1, 1, 6);
-        boolean layer2Stable = isLayerStable(world, origin, 2, 2, 17);
-        boolean layer3Stable = isLayerStable(world, origin, 3, 3, 33);
-        boolean layer4Stable = isLayerStable(world, origin, 4, 4, 55);
+        boolean layer1Stable = isLayerStable(world, ox, oy, oz, 1, 1, 6);
+        boolean layer2Stable = isLayerStable(world, ox, oy, oz, 2, 2, 17);
+        boolean layer3Stable = isLayerStable(world, ox, oy, oz, 3, 3, 33);
+        boolean layer4Stable = isLayerStable(world, ox, oy, oz, 4, 4, 55);
+
+        context.layerFlags = BreakContext.LAYERS_EVALUATED | (layer1Stable ? 1 : 0) | (layer2Stable ? 2 : 0)
+                | (layer3Stable ? 4 : 0) | (layer4Stable ? 8 : 0);
 
         boolean allStable = layer1Stable && layer2Stable && layer3Stable && layer4Stable;
         if (allStable) {
             return false;
         }
 
-        boolean underFeet = isBlockUnderPlayer(player, origin, 3);
+        boolean underFeet = isBlockUnderPlayer(context, 3);
         if (!underFeet) {
             return false;
         }
 
-        Material fillType = world.getBlockAt(origin).getType();
-        if (!collapseWhitelist.contains(fillType) || fillType == Material.AIR) {
+        Material fillType = world.getType(ox, oy, oz);
+        if (!materials.has(fillType, MaterialTable.COLLAPSIBLE) || fillType == Material.AIR) {
             fillType = Material.STONE;
         }
 
-        triggerVerticalShaftCollapse(world, player, fillType);
-
-        if (plugin.isDebugCaveIns() && player != null) {
-            player.sendMessage(ChatColor.GRAY + "[DEBUG] " + ChatColor.YELLOW
-                    + "Vertical shaft collapse triggered at "
-                    + origin.getBlockX() + ", " + origin.getBlockY() + ", " + origin.getBlockZ()
-                    + " (layers: "
-                    + "L1=" + layer1Stable + ", "
-                    + "L2=" + layer2Stable + ", "
-                    + "L3=" + layer3Stable + ", "
-                    + "L4=" + layer4Stable + ")");
-        }
+        triggerVerticalShaftCollapse(world, context.playerX, context.playerY, context.playerZ, fillType);
 
         return true;
     }
 
-    private boolean triggerHorizontalIfNeeded(World world, Location origin, Axis axis, Player player) {
-        HorizontalRun run = countHorizontalAirRun(world, origin, axis, REQUIRED_AIR_RUN);
-        if (run.total < REQUIRED_AIR_RUN) {
+    private boolean triggerHorizontalIfNeeded(VoxelAccess world, BreakContext context, Axis axis) {
+        int runTotal = countHorizontalAirRun(world, context, axis, REQUIRED_AIR_RUN);
+        if (axis == Axis.X) {
+            context.airRunX = runTotal;
+        } else {
+            context.airRunZ = runTotal;
+        }
+        // Heavily mined sections give way over shorter spans.
+        int requiredRun = Math.max(MIN_REQUIRED_AIR_RUN, REQUIRED_AIR_RUN - context.fatigue);
+        if (runTotal < requiredRun) {
             return false;
         }
 
-        int direction = run.positive >= run.negative ? 1 : -1;
-        boolean hasSupport = hasWoodSupport(world, origin, axis, MAX_HORIZONTAL_DISTANCE, direction);
+        int direction = runPositive >= runNegative ? 1 : -1;
+        boolean hasSupport = hasWoodSupport(world, context, axis, MAX_HORIZONTAL_DISTANCE, direction);
+        context.support = hasSupport ? BreakContext.SUPPORT_FOUND : BreakContext.SUPPORT_MISSING;
         if (hasSupport) {
             return false;
         }
 
-        triggerTunnelCaveIn(world, origin, axis, direction, Math.min(run.total, MAX_HORIZONTAL_DISTANCE), player, hasSupport);
+        triggerTunnelCaveIn(world, context, axis, direction, Math.min(runTotal, MAX_HORIZONTAL_DISTANCE));
         return true;
     }
 
-    private boolean isDeepUnderground(Location loc, int minDepth) {
-        World world = loc.getWorld();
-        if (world == null) {
-            return false;
-        }
-        int surfaceY = world.getHighestBlockYAt(loc.getBlockX(), loc.getBlockZ());
-        int y = loc.getBlockY();
+    private boolean isDeepUnderground(VoxelAccess world, int x, int y, int z, int minDepth) {
+        int surfaceY = world.getHighestBlockY(x, z);
         return y <= surfaceY - minDepth;
     }
 
-    private boolean isCaveCeilingBreak(Block broken) {
-        World world = broken.getWorld();
-        Location loc = broken.getLocation();
-        Block below = world.getBlockAt(loc.getBlockX(), loc.getBlockY() - 1, loc.getBlockZ());
-        return below.getType() == Material.AIR;
+    private boolean isCaveCeilingBreak(VoxelAccess world, BreakContext context) {
+        return world.getType(context.x, context.y - 1, context.z) == Material.AIR;
     }
 
-    private boolean isLayerStable(World world, Location origin, int yOffset, int radius, int requiredAir) {
-        int ox = origin.getBlockX();
-        int oy = origin.getBlockY() + yOffset;
-        int oz = origin.getBlockZ();
+    private boolean isLayerStable(VoxelAccess world, int ox, int originY, int oz, int yOffset, int radius, int requiredAir) {
+        int oy = originY + yOffset;
 
         int airCount = 0;
 
         for (int dx = -radius; dx <= radius; dx++) {
             for (int dz = -radius; dz <= radius; dz++) {
-                Block block = world.getBlockAt(ox + dx, oy, oz + dz);
-                if (block.getType() == Material.AIR) {
+                if (world.getType(ox + dx, oy, oz + dz) == Material.AIR) {
                     airCount++;
                 }
             }
@@ -160,23 +209,26 @@ public class MiningSafetyManager {
         return airCount >= requiredAir;
     }
 
-    private HorizontalRun countHorizontalAirRun(World world, Location origin, Axis axis, int maxLength) {
-        int positive = countDirectionalAir(world, origin, axis, maxLength, 1);
-        int negative = countDirectionalAir(world, origin, axis, maxLength, -1);
-        return new HorizontalRun(positive, negative, positive + negative + 1);
+    /**
+     * @return the length of the air run through the break along the axis; the two halves are left in
+     *         {@link #runPositive} and {@link #runNegative}
+     */
+    private int countHorizontalAirRun(VoxelAccess world, BreakContext context, Axis axis, int maxLength) {
+        runPositive = countDirectionalAir(world, context, axis, maxLength, 1);
+        runNegative = countDirectionalAir(world, context, axis, maxLength, -1);
+        return runPositive + runNegative + 1;
     }
 
-    private int countDirectionalAir(World world, Location origin, Axis axis, int maxLength, int direction) {
+    private int countDirectionalAir(VoxelAccess world, BreakContext context, Axis axis, int maxLength, int direction) {
         int count = 0;
-        int ox = origin.getBlockX();
-        int oy = origin.getBlockY();
-        int oz = origin.getBlockZ();
+        int ox = context.x;
+        int oy = context.y;
+        int oz = context.z;
 
         for (int d = 1; d <= maxLength; d++) {
             int x = axis == Axis.X ? ox + (direction * d) : ox;
             int z = axis == Axis.Z ? oz + (direction * d) : oz;
-            Block block = world.getBlockAt(x, oy, z);
-            if (block.getType() != Material.AIR) {
+            if (world.getType(x, oy, z) != Material.AIR) {
                 break;
             }
             count++;
@@ -184,10 +236,10 @@ public class MiningSafetyManager {
         return count;
     }
 
-    private boolean hasWoodSupport(World world, Location origin, Axis axis, int maxDistance, int direction) {
-        int ox = origin.getBlockX();
-        int oy = origin.getBlockY();
-        int oz = origin.getBlockZ();
+    private boolean hasWoodSupport(VoxelAccess world, BreakContext context, Axis axis, int maxDistance, int direction) {
+        int ox = context.x;
+        int oy = context.y;
+        int oz = context.z;
 
         for (int d = 1; d <= maxDistance; d++) {
             int centerX = axis == Axis.X ? ox + (direction * d) : ox;
@@ -197,8 +249,7 @@ public class MiningSafetyManager {
                 for (int offset = -1; offset <= 1; offset++) {
                     int x = axis == Axis.X ? centerX : centerX + offset;
                     int z = axis == Axis.Z ? centerZ : centerZ + offset;
-                    Block block = world.getBlockAt(x, oy + dy, z);
-                    if (block.getType() == Material.WOOD) {
+                    if (world.getType(x, oy + dy, z) == Material.WOOD) {
                         return true;
                     }
                 }
@@ -208,189 +259,192 @@ public class MiningSafetyManager {
         return false;
     }
 
-    private void triggerCaveCeilingCollapse(World world, Location origin, Material fillType) {
-        int ox = origin.getBlockX();
-        int oy = origin.getBlockY();
-        int oz = origin.getBlockZ();
-
+    private void triggerCaveCeilingCollapse(VoxelAccess world, int ox, int oy, int oz, Material fillType) {
         int spawned = 0;
+        int[] offsets = shapes.caveCeiling.offsets;
+        int[] columns = shapes.caveCeiling.groups;
 
-        for (int dx = -2; dx <= 2; dx++) {
-            for (int dz = -2; dz <= 2; dz++) {
-                int airCount = 0;
+        for (int c = 0; c + 1 < columns.length; c++) {
+            int start = columns[c];
+            int end = columns[c + 1];
+            if (start == end) {
+                continue;
+            }
+            int airCount = 0;
 
-                for (int dy = 1; dy <= 5; dy++) {
-                    int y = oy - dy;
-                    if (y < 0) {
-                        break;
-                    }
-                    Block target = world.getBlockAt(ox + dx, y, oz + dz);
-                    if (target.getType() == Material.AIR) {
-                        airCount++;
-                    }
+            for (int i = start; i < end; i += 3) {
+                int y = oy + offsets[i + 1];
+                if (y < 0) {
+                    continue;
                 }
-
-                for (int i = 0; i < airCount; i++) {
-                    if (spawned >= MAX_FALLING_BLOCKS) {
-                        return;
-                    }
-                    Location spawnLoc = new Location(world, ox + dx + 0.5D, oy - 0.5D + i, oz + dz + 0.5D);
-                    spawnFallingBlock(world, spawnLoc, fillType, (byte) 0);
-                    spawned++;
+                if (world.getType(ox + offsets[i], y, oz + offsets[i + 2]) == Material.AIR) {
+                    airCount++;
                 }
             }
-        }
-    }
-
-    private void triggerSlopeCollapse(World world, Location origin) {
-        int ox = origin.getBlockX();
-        int oy = origin.getBlockY();
-        int oz = origin.getBlockZ();
 
-        int spawned = 0;
-
-        for (int layer = 1; layer <= 4; layer++) {
-            int radius = layer;
-            int y = oy + layer;
-
-            for (int dx = -radius; dx <= radius; dx++) {
-                for (int dz = -radius; dz <= radius; dz++) {
-                    if (spawned >= MAX_FALLING_BLOCKS) {
-                        return;
-                    }
-                    Block block = world.getBlockAt(ox + dx, y, oz + dz);
-                    Material type = block.getType();
-                    if (type == Material.AIR) {
-                        continue;
-                    }
-                    if (!collapseWhitelist.contains(type)) {
-                        continue;
-                    }
-
-                    byte data = block.getData();
-                    block.setType(Material.AIR);
-                    Location spawnLoc = new Location(world, ox + dx + 0.5D, y + 0.0D, oz + dz + 0.5D);
-                    spawnFallingBlock(world, spawnLoc, type, data);
-                    spawned++;
+            double fx = ox + offsets[start] + 0.5D;
+            double fz = oz + offsets[start + 2] + 0.5D;
+            for (int i = 0; i < airCount; i++) {
+                if (spawned >= loadLevel.maxFallingBlocks()) {
+                    return;
                 }
+                spawnFalling(world, fx, oy - 0.5D + i, fz, fillType, (byte) 0);
+                spawned++;
             }
         }
     }
 
-    private void triggerTunnelCaveIn(World world, Location origin, Axis axis, int direction, int airRunLength, Player player, boolean hasSupport) {
+    private void triggerTunnelCaveIn(VoxelAccess world, BreakContext context, Axis axis, int direction, int airRunLength) {
         int spawned = 0;
-        int ox = origin.getBlockX();
-        int oy = origin.getBlockY();
-        int oz = origin.getBlockZ();
+        int ox = context.x;
+        int oy = context.y;
+        int oz = context.z;
+        int maxHeight = world.getMaxHeight();
+        int[] offsets = shapes.tunnel.offsets;
 
         for (int d = 1; d <= airRunLength; d++) {
             int baseX = axis == Axis.X ? ox + (direction * d) : ox;
             int baseZ = axis == Axis.Z ? oz + (direction * d) : oz;
 
-            for (int side = -1; side <= 1; side++) {
-                int x = axis == Axis.X ? baseX : baseX + side;
-                int z = axis == Axis.Z ? baseZ : baseZ + side;
-                spawned = collapseColumn(world, x, oy, z, spawned);
-                if (spawned >= MAX_FALLING_BLOCKS) {
+            // Shape x runs across the tunnel and shape z along it.
+            for (int i = 0; i < offsets.length; i += 3) {
+                if (spawned >= loadLevel.maxFallingBlocks()) {
                     return;
                 }
-            }
-        }
-
-        if (plugin.isDebugCaveIns() && player != null) {
-            player.sendMessage(ChatColor.GRAY + "[DEBUG] " + ChatColor.YELLOW
-                    + "Tunnel cave-in triggered along axis " + axis.name()
-                    + " at " + origin.getBlockX() + ", " + origin.getBlockY() + ", " + origin.getBlockZ()
-                    + " (airRun=" + airRunLength + ", supportFound=" + hasSupport + ")");
-        }
-    }
-
-    private int collapseColumn(World world, int x, int baseY, int z, int spawnedSoFar) {
-        for (int dy = 1; dy <= MAX_HORIZONTAL_HEIGHT; dy++) {
-            if (spawnedSoFar >= MAX_FALLING_BLOCKS) {
-                return spawnedSoFar;
-            }
-            int y = baseY + dy;
-            if (y >= world.getMaxHeight()) {
-                return spawnedSoFar;
-            }
-            Block block = world.getBlockAt(x, y, z);
-            Material type = block.getType();
-            if (type == Material.AIR) {
-                continue;
-            }
+                int across = offsets[i];
+                int along = offsets[i + 2] * direction;
+                int x = axis == Axis.X ? baseX + along : baseX + across;
+                int y = oy + offsets[i + 1];
+                int z = axis == Axis.Z ? baseZ + along : baseZ + across;
+                if (y >= maxHeight) {
+                    continue;
+                }
+                Material type = world.getType(x, y, z);
+                if (type == Material.AIR || !materials.has(type, MaterialTable.COLLAPSIBLE)) {
+                    continue;
+                }
 
-            if (!collapseWhitelist.contains(type)) {
-                continue;
+                byte data = world.getData(x, y, z);
+                world.setAir(x, y, z);
+                spawnFalling(world, x + 0.5D, y + 0.0D, z + 0.5D, type, data);
+                spawned++;
             }
-
-            byte data = block.getData();
-            block.setType(Material.AIR);
-            spawnFallingBlock(world, new Location(world, x + 0.5D, y + 0.0D, z + 0.5D), type, data);
-            spawnedSoFar++;
         }
-        return spawnedSoFar;
     }
 
-    private boolean isBlockUnderPlayer(Player player, Location origin, int maxDistance) {
-        if (player == null || origin == null) {
-            return false;
-        }
-        Location pl = player.getLocation();
-        if (pl.getWorld() == null || origin.getWorld() == null) {
-            return false;
-        }
-        if (!pl.getWorld().equals(origin.getWorld())) {
+    private boolean isBlockUnderPlayer(BreakContext context, int maxDistance) {
+        if (!context.hasPlayer) {
             return false;
         }
 
-        if (pl.getBlockX() != origin.getBlockX() || pl.getBlockZ() != origin.getBlockZ()) {
+        if (context.playerX != context.x || context.playerZ != context.z) {
             return false;
         }
 
-        int dy = pl.getBlockY() - origin.getBlockY();
+        int dy = context.playerY - context.y;
         return dy >= 1 && dy <= maxDistance;
     }
 
-    private void triggerVerticalShaftCollapse(World world, Player player, Material fillType) {
-        if (world == null || player == null || fillType == null || fillType == Material.AIR) {
+    private void triggerVerticalShaftCollapse(VoxelAccess world, int cx, int cy, int cz, Material fillType) {
+        if (fillType == null || fillType == Material.AIR) {
             return;
         }
 
-        Location pl = player.getLocation();
-        int cx = pl.getBlockX();
-        int cy = pl.getBlockY();
-        int cz = pl.getBlockZ();
-
         int spawned = 0;
-        int maxHeight = Math.min(world.getMaxHeight() - 1, cy + 16);
+        int maxY = world.getMaxHeight() - 1;
+        int[] offsets = shapes.verticalShaft.offsets;
 
-        for (int y = cy; y <= maxHeight; y++) {
-            for (int dx = -1; dx <= 1; dx++) {
-                for (int dz = -1; dz <= 1; dz++) {
-                    if (spawned >= MAX_FALLING_BLOCKS) {
-                        return;
+        for (int i = 0; i < offsets.length; i += 3) {
+            if (spawned >= loadLevel.maxFallingBlocks()) {
+                return;
+            }
+            int x = cx + offsets[i];
+            int y = cy + offsets[i + 1];
+            int z = cz + offsets[i + 2];
+            if (y > maxY) {
+                return;
+            }
+            if (world.getType(x, y, z) != Material.AIR) {
+                continue;
+            }
+
+            spawnFalling(world, x + 0.5D, y + 0.0D, z + 0.5D, fillType, (byte) 0);
+            spawned++;
+        }
+    }
+
+    private boolean hasSupports(VoxelAccess world, int cx, int cy, int cz) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                if (dx == 0 && dz == 0) {
+                    continue;
+                }
+                if (isSupportBlock(world.getType(cx + dx, cy, cz + dz))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isSupportBlock(Material type) {
+        return materials.has(type, MaterialTable.SUPPORT);
+    }
+
+    private void triggerCollapse(VoxelAccess world, int ox, int oy, int oz) {
+        int maxHeight = world.getMaxHeight();
+        // This rule was never capped; only limit it once the server is shedding load.
+        int cap = loadLevel == CollapseLoadLevel.NORMAL ? Integer.MAX_VALUE : loadLevel.maxFallingBlocks();
+        int spawned = 0;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                int airStreak = 0;
+                for (int dy = 0; dy < maxHeight; dy++) {
+                    int x = ox + dx;
+                    int y = oy + dy;
+                    int z = oz + dz;
+                    Material type = world.getType(x, y, z);
+                    if (type == Material.AIR) {
+                        airStreak++;
+                        if (airStreak >= 3) {
+                            break;
+                        }
+                        continue;
                     }
-                    Block target = world.getBlockAt(cx + dx, y, cz + dz);
-                    if (target.getType() != Material.AIR) {
+
+                    airStreak = 0;
+
+                    if (materials.has(type, MaterialTable.PROTECTED)) {
                         continue;
                     }
+                    if (spawned >= cap) {
+                        return;
+                    }
 
-                    Location spawnLoc = target.getLocation().add(0.5D, 0.0D, 0.5D);
-                    spawnFallingBlock(world, spawnLoc, fillType, (byte) 0);
+                    byte data = world.getData(x, y, z);
+                    world.setAir(x, y, z);
+                    spawnFalling(world, x + 0.5D, y + 0.0D, z + 0.5D, type, data);
                     spawned++;
                 }
             }
         }
     }
 
-    private void spawnFallingBlock(World world, Location location, Material type, byte data) {
-        FallingBlock falling = world.spawnFallingBlock(location, type, data);
-        try {
-            falling.setDropItem(false);
-            falling.setHurtEntities(false);
-        } catch (NoSuchMethodError ignored) {
-            // Older API revisions may not support these toggles; gravity is sufficient.
+    private void spawnFalling(VoxelAccess world, double x, double y, double z, Material type, byte data) {
+        spawnedThisEvaluation++;
+        if (!loadLevel.directWrites()) {
+            world.spawnFallingBlock(x, y, z, type, data);
+            return;
+        }
+
+        int bx = (int) Math.floor(x);
+        int by = (int) Math.floor(y);
+        int bz = (int) Math.floor(z);
+        while (by > 0 && world.getType(bx, by - 1, bz) == Material.AIR) {
+            by--;
+        }
+        if (world.getType(bx, by, bz) == Material.AIR) {
+            world.setBlock(bx, by, bz, type, data);
         }
     }
 
@@ -398,16 +452,4 @@ public class MiningSafetyManager {
         X,
         Z
     }
-
-    private static class HorizontalRun {
-        final int positive;
-        final int negative;
-        final int total;
-
-        HorizontalRun(int positive, int negative, int total) {
-            this.positive = positive;
-            this.negative = negative;
-            this.total = total;
-        }
-    }
 }
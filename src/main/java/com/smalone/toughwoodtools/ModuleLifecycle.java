@@ -0,0 +1,17 @@
+package com.smalone.toughwoodtools;
+
+/**
+ * Optional callbacks for module listeners that own resources beyond their event handlers,
+ * such as scheduled tasks.
+ */
+public interface ModuleLifecycle {
+
+    void onModuleEnable();
+
+    void onModuleDisable();
+
+    /**
+     * Pick up settings from a reloaded config.yml while the module stays enabled.
+     */
+    void onConfigReload();
+}
@@ -0,0 +1,119 @@
+package com.smalone.toughwoodtools;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.bukkit.World;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+
+/**
+ * Registers only the feature listeners that are enabled in config.yml, so disabled features never
+ * pay event-dispatch cost. {@link #apply()} can be called again after a config reload to register
+ * or unregister modules at runtime; modules that stay enabled get {@link ModuleLifecycle#onConfigReload}.
+ *
+ * <p>Listener instances are created once and reused across reloads so state such as the spectator
+ * platform survives toggling.</p>
+ */
+public class ModuleManager {
+
+    private final ToughTools plugin;
+    private final Map<FeatureModule, Listener> listeners = new EnumMap<FeatureModule, Listener>(FeatureModule.class);
+    private final Map<FeatureModule, Listener> active = new EnumMap<FeatureModule, Listener>(FeatureModule.class);
+    private final Map<FeatureModule, Set<String>> disabledWorlds =
+            new EnumMap<FeatureModule, Set<String>>(FeatureModule.class);
+
+    public ModuleManager(ToughTools plugin) {
+        this.plugin = plugin;
+        for (FeatureModule module : FeatureModule.values()) {
+            disabledWorlds.put(module, Collections.<String>emptySet());
+        }
+    }
+
+    public static void addDefaults(FileConfiguration config) {
+        for (FeatureModule module : FeatureModule.values()) {
+            config.addDefault("modules." + module.getKey() + ".enabled", true);
+            config.addDefault("modules." + module.getKey() + ".disabled-worlds", Collections.<String>emptyList());
+        }
+    }
+
+    public void apply() {
+        FileConfiguration config = plugin.getConfig();
+        for (FeatureModule module : FeatureModule.values()) {
+            String path = "modules." + module.getKey();
+            Set<String> worlds = new HashSet<String>(config.getStringList(path + ".disabled-worlds"));
+            disabledWorlds.put(module, worlds.isEmpty() ? Collections.<String>emptySet() : worlds);
+
+            boolean enabled = config.getBoolean(path + ".enabled", true);
+            if (enabled && !active.containsKey(module)) {
+                enable(module);
+            } else if (enabled && active.get(module) instanceof ModuleLifecycle) {
+                ((ModuleLifecycle) active.get(module)).onConfigReload();
+            } else if (!enabled && active.containsKey(module)) {
+                disable(module);
+                plugin.getLogger().info("Module " + module.getKey() + " disabled.");
+            }
+        }
+    }
+
+    public void disableAll() {
+        for (FeatureModule module : FeatureModule.values()) {
+            if (active.containsKey(module)) {
+                disable(module);
+            }
+        }
+    }
+
+    public boolean isActive(FeatureModule module) {
+        return active.containsKey(module);
+    }
+
+    /**
+     * Whether a registered module should act on events in the given world.
+     */
+    public boolean isEnabled(FeatureModule module, World world) {
+        Set<String> disabled = disabledWorlds.get(module);
+        return disabled.isEmpty() || world == null || !disabled.contains(world.getName());
+    }
+
+    private void enable(FeatureModule module) {
+        Listener listener = listeners.get(module);
+        if (listener == null) {
+            listener = create(module);
+            listeners.put(module, listener);
+        }
+        plugin.getProfiler().register(listener, plugin);
+        if (listener instanceof ModuleLifecycle) {
+            ((ModuleLifecycle) listener).onModuleEnable();
+        }
+        active.put(module, listener);
+        plugin.getLogger().info(module.getEnableMessage());
+    }
+
+    private void disable(FeatureModule module) {
+        Listener listener = active.remove(module);
+        HandlerList.unregisterAll(listener);
+        if (listener instanceof ModuleLifecycle) {
+            ((ModuleLifecycle) listener).onModuleDisable();
+        }
+    }
+
+    private Listener create(FeatureModule module) {
+        switch (module) {
+            case TOOL_BUFFS:
+                return plugin;
+            case INSTANT_WHEAT:
+                return new InstantWheatListener(plugin);
+            case MINING_COLLAPSE:
+                return new MiningCollapseListener(plugin);
+            case GAMEPLAY:
+                return new GameplayListener(plugin);
+            default:
+                throw new IllegalArgumentException("Unknown module " + module);
+        }
+    }
+}
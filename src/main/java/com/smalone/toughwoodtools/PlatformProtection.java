@@ -0,0 +1,28 @@
+package com.smalone.toughwoodtools;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tracks blocks belonging to the spectator platform so they cannot be broken.
+ */
+public class PlatformProtection {
+
+    private final Set<String> platformBlocks = new HashSet<String>();
+
+    public void add(String worldName, int x, int y, int z) {
+        platformBlocks.add(buildKey(worldName, x, y, z));
+    }
+
+    public boolean isProtected(String worldName, int x, int y, int z) {
+        return platformBlocks.contains(buildKey(worldName, x, y, z));
+    }
+
+    public int size() {
+        return platformBlocks.size();
+    }
+
+    private String buildKey(String worldName, int x, int y, int z) {
+        return worldName + ":" + x + ":" + y + ":" + z;
+    }
+}
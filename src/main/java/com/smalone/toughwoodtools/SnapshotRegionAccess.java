@@ -0,0 +1,84 @@
+package com.smalone.toughwoodtools;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+
+/**
+ * Read-only {@link VoxelAccess} over a rectangular grid of chunk snapshots, safe to share between
+ * threads. Chunks that were not captured read as air. Writes are discarded, so running the collapse
+ * rules against it is a dry run that only reports what would happen.
+ */
+public class SnapshotRegionAccess implements VoxelAccess {
+
+    private final ChunkSnapshot[] chunks;
+    private final int minChunkX;
+    private final int minChunkZ;
+    private final int width;
+    private final int depth;
+    private final int maxHeight;
+
+    public SnapshotRegionAccess(ChunkSnapshot[] chunks, int minChunkX, int minChunkZ, int width, int depth, int maxHeight) {
+        this.chunks = chunks;
+        this.minChunkX = minChunkX;
+        this.minChunkZ = minChunkZ;
+        this.width = width;
+        this.depth = depth;
+        this.maxHeight = maxHeight;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public Material getType(int x, int y, int z) {
+        ChunkSnapshot chunk = chunkAt(x, z);
+        if (chunk == null || y < 0 || y >= maxHeight) {
+            return Material.AIR;
+        }
+        Material type = Material.getMaterial(chunk.getBlockTypeId(x & 15, y, z & 15));
+        return type == null ? Material.AIR : type;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public byte getData(int x, int y, int z) {
+        ChunkSnapshot chunk = chunkAt(x, z);
+        if (chunk == null || y < 0 || y >= maxHeight) {
+            return 0;
+        }
+        return (byte) chunk.getBlockData(x & 15, y, z & 15);
+    }
+
+    @Override
+    public int getHighestBlockY(int x, int z) {
+        ChunkSnapshot chunk = chunkAt(x, z);
+        return chunk == null ? 0 : chunk.getHighestBlockYAt(x & 15, z & 15);
+    }
+
+    @Override
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    @Override
+    public void setAir(int x, int y, int z) {
+        // Dry run: the snapshot is shared and never modified.
+    }
+
+    @Override
+    public void setBlock(int x, int y, int z, Material type, byte data) {
+        // Dry run: the snapshot is shared and never modified.
+    }
+
+    @Override
+    public void spawnFallingBlock(double x, double y, double z, Material type, byte data) {
+        // Dry run: nothing is spawned.
+    }
+
+    ChunkSnapshot chunkAt(int x, int z) {
+        int cx = (x >> 4) - minChunkX;
+        int cz = (z >> 4) - minChunkZ;
+        if (cx < 0 || cz < 0 || cx >= width || cz >= depth) {
+            return null;
+        }
+        return chunks[cz * width + cx];
+    }
+}
@@ -0,0 +1,94 @@
+package com.smalone.toughwoodtools;
+
+import org.bukkit.Material;
+
+/**
+ * {@link VoxelAccess} over a captured trace box. Reads outside the box see air; removals update the
+ * box so later reads in the same evaluation match what the live world would return.
+ */
+public class SnapshotVoxelAccess implements VoxelAccess {
+
+    private final BreakTrace.Record record;
+    private int removed;
+    private int spawned;
+
+    SnapshotVoxelAccess(BreakTrace.Record record) {
+        this.record = record;
+    }
+
+    public int getRemoved() {
+        return removed;
+    }
+
+    public int getSpawned() {
+        return spawned;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public Material getType(int x, int y, int z) {
+        int index = indexOf(x, y, z);
+        if (index < 0) {
+            return Material.AIR;
+        }
+        Material type = Material.getMaterial(record.types[index] & 0xFF);
+        return type == null ? Material.AIR : type;
+    }
+
+    @Override
+    public byte getData(int x, int y, int z) {
+        int index = indexOf(x, y, z);
+        return index < 0 ? 0 : record.data[index];
+    }
+
+    @Override
+    public int getHighestBlockY(int x, int z) {
+        int bx = x - record.minX();
+        int bz = z - record.minZ();
+        if (bx < 0 || bz < 0 || bx >= BreakTrace.SIZE_XZ || bz >= BreakTrace.SIZE_XZ) {
+            return 0;
+        }
+        return record.heights[BreakTrace.columnIndex(bx, bz)];
+    }
+
+    @Override
+    public int getMaxHeight() {
+        return record.maxHeight;
+    }
+
+    @Override
+    public void setAir(int x, int y, int z) {
+        int index = indexOf(x, y, z);
+        if (index >= 0) {
+            record.types[index] = 0;
+            record.data[index] = 0;
+        }
+        removed++;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void setBlock(int x, int y, int z, Material type, byte data) {
+        int index = indexOf(x, y, z);
+        if (index >= 0) {
+            record.types[index] = (byte) type.getId();
+            record.data[index] = data;
+        }
+    }
+
+    @Override
+    public void spawnFallingBlock(double x, double y, double z, Material type, byte data) {
+        spawned++;
+    }
+
+    private int indexOf(int x, int y, int z) {
+        int bx = x - record.minX();
+        int by = y - record.minY();
+        int bz = z - record.minZ();
+        if (bx < 0 || by < 0 || bz < 0
+                || bx >= BreakTrace.SIZE_XZ || by >= BreakTrace.SIZE_Y || bz >= BreakTrace.SIZE_XZ) {
+            return -1;
+        }
+        return BreakTrace.cellIndex(bx, by, bz);
+    }
+}
@@ -0,0 +1,312 @@
+package com.smalone.toughwoodtools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+
+import org.bukkit.ChatColor;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.scheduler.BukkitRunnable;
+
+/**
+ * Audit a mining area for collapse risk without touching tick time.
+ *
+ * <p>Chunk snapshots are captured on the main thread a few per tick. Every exposed, collapsible
+ * block in the requested height range is then dry-run through the collapse rules in parallel, one
+ * fork-join leaf per few chunk sections, using the collapse shapes that were live when the scan
+ * started. Results are exported as CSV and summarized to the requester as
+ * a per-chunk heatmap.</p>
+ */
+public class StabilityHeatmapScan {
+
+    static final int MAX_RADIUS = 16;
+    private static final int SNAPSHOTS_PER_TICK = 8;
+    private static final int SECTIONS_PER_LEAF = 4;
+    private static final int MAX_CHAT_RADIUS = 8;
+    private static final char[] SHADES = " .:-=+*#%@".toCharArray();
+
+    private final ToughTools plugin;
+    private boolean running;
+
+    public StabilityHeatmapScan(ToughTools plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Start a scan of the chunks within {@code radius} of the center chunk. Main thread only.
+     *
+     * @return false if another scan is still running
+     */
+    public boolean start(final CommandSender sender, final World world, int centerChunkX, int centerChunkZ,
+                         int radius, int minY, int maxY) {
+        if (running) {
+            return false;
+        }
+        running = true;
+
+        // The rules read up to SCAN_REACH blocks sideways, so capture one extra ring of chunks.
+        final Region region = new Region(world, centerChunkX - radius - 1, centerChunkZ - radius - 1,
+                radius * 2 + 3, Math.max(0, minY), Math.min(world.getMaxHeight() - 1, maxY),
+                plugin.getCollapseShapes());
+        new BukkitRunnable() {
+            private int next;
+
+            @Override
+            public void run() {
+                int end = Math.min(region.snapshots.length, next + SNAPSHOTS_PER_TICK);
+                for (; next < end; next++) {
+                    int cx = region.minChunkX + next % region.size;
+                    int cz = region.minChunkZ + next / region.size;
+                    if (world.isChunkLoaded(cx, cz)) {
+                        region.snapshots[next] = world.getChunkAt(cx, cz).getChunkSnapshot(true, false, false);
+                    }
+                }
+                if (next >= region.snapshots.length) {
+                    cancel();
+                    analyze(sender, region);
+                }
+            }
+        }.runTaskTimer(plugin, 1L, 1L);
+        return true;
+    }
+
+    private void analyze(final CommandSender sender, final Region region) {
+        final ForkJoinPool pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        pool.execute(() -> {
+            long start = System.nanoTime();
+            String message;
+            try {
+                List<long[]> sections = collectSections(region);
+                new SectionTask(region, sections, 0, sections.size()).invoke();
+                long elapsedMillis = (System.nanoTime() - start) / 1000000L;
+                File file = export(region);
+                message = summarize(region, elapsedMillis, file);
+            } catch (RuntimeException | IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Stability heatmap scan failed", e);
+                message = ChatColor.RED + "Heatmap scan failed: " + e.getMessage();
+            } finally {
+                pool.shutdown();
+            }
+            final String report = message;
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                running = false;
+                sender.sendMessage(report);
+            });
+        });
+    }
+
+    private List<long[]> collectSections(Region region) {
+        List<long[]> sections = new ArrayList<long[]>();
+        for (int cz = 1; cz < region.size - 1; cz++) {
+            for (int cx = 1; cx < region.size - 1; cx++) {
+                ChunkSnapshot snapshot = region.snapshots[cz * region.size + cx];
+                if (snapshot == null) {
+                    continue;
+                }
+                for (int sy = region.minY >> 4; sy <= region.maxY >> 4; sy++) {
+                    if (!snapshot.isSectionEmpty(sy)) {
+                        sections.add(new long[] {cx, cz, sy});
+                    }
+                }
+            }
+        }
+        return sections;
+    }
+
+    private File export(Region region) throws IOException {
+        File directory = new File(plugin.getDataFolder(), "heatmaps");
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File file = new File(directory, "heatmap-" + region.world.getName() + "-" + stamp + ".csv");
+        try (PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            out.println("x,z,candidates,collapse,unstable_layers");
+            int baseX = (region.minChunkX + 1) << 4;
+            int baseZ = (region.minChunkZ + 1) << 4;
+            for (int column = 0; column < region.candidates.length(); column++) {
+                int candidates = region.candidates.get(column);
+                if (candidates == 0) {
+                    continue;
+                }
+                out.println((baseX + column % region.columnsPerRow) + "," + (baseZ + column / region.columnsPerRow)
+                        + "," + candidates + "," + region.risky.get(column) + "," + region.unstable.get(column));
+            }
+        }
+        return file;
+    }
+
+    private String summarize(Region region, long elapsedMillis, File file) {
+        long candidates = 0L;
+        long risky = 0L;
+        long unstable = 0L;
+        for (int column = 0; column < region.candidates.length(); column++) {
+            candidates += region.candidates.get(column);
+            risky += region.risky.get(column);
+            unstable += region.unstable.get(column);
+        }
+
+        StringBuilder out = new StringBuilder();
+        int core = region.size - 2;
+        out.append(ChatColor.GOLD).append("Stability heatmap: ").append(core * core).append(" chunks, y ")
+                .append(region.minY).append('-').append(region.maxY).append(" in ").append(elapsedMillis).append("ms\n");
+        out.append(ChatColor.GRAY).append(candidates).append(" exposed blocks, ").append(risky)
+                .append(" would collapse, ").append(unstable).append(" under unstable layers\n");
+        CollapseType[] types = CollapseType.values();
+        for (int i = 1; i < types.length; i++) {
+            long count = region.decisions.get(i);
+            if (count > 0) {
+                out.append(ChatColor.GRAY).append("  ").append(types[i]).append(": ").append(count).append('\n');
+            }
+        }
+
+        if (core <= MAX_CHAT_RADIUS * 2 + 1) {
+            // One character per chunk, north at the top: blank when nothing was scanned, '.' when
+            // nothing would collapse, then darker with the share of blocks that would collapse.
+            for (int cz = 0; cz < core; cz++) {
+                out.append(ChatColor.DARK_GRAY).append('|').append(ChatColor.YELLOW);
+                for (int cx = 0; cx < core; cx++) {
+                    out.append(shade(region, cx, cz));
+                }
+                out.append(ChatColor.DARK_GRAY).append("|\n");
+            }
+        }
+        out.append(ChatColor.GRAY).append("Exported to ").append(file.getName());
+        return out.toString();
+    }
+
+    private char shade(Region region, int chunkX, int chunkZ) {
+        long candidates = 0L;
+        long risky = 0L;
+        for (int lz = 0; lz < 16; lz++) {
+            int row = (chunkZ * 16 + lz) * region.columnsPerRow + chunkX * 16;
+            for (int lx = 0; lx < 16; lx++) {
+                candidates += region.candidates.get(row + lx);
+                risky += region.risky.get(row + lx);
+            }
+        }
+        if (candidates == 0L) {
+            return SHADES[0];
+        }
+        if (risky == 0L) {
+            return SHADES[1];
+        }
+        return SHADES[(int) Math.min(SHADES.length - 1, 2 + risky * (SHADES.length - 2) / candidates)];
+    }
+
+    private static final class Region {
+        final World world;
+        final int minChunkX;
+        final int minChunkZ;
+        final int size;
+        final int minY;
+        final int maxY;
+        final int columnsPerRow;
+        /** The shapes the live rules used when the scan started; a reload mid-scan does not change them. */
+        final CollapseShapes shapes;
+        final ChunkSnapshot[] snapshots;
+        /** Per-column counters over the core chunks (the outer margin ring is excluded). */
+        final AtomicIntegerArray candidates;
+        final AtomicIntegerArray risky;
+        final AtomicIntegerArray unstable;
+        final AtomicLongArray decisions = new AtomicLongArray(CollapseType.values().length);
+
+        Region(World world, int minChunkX, int minChunkZ, int size, int minY, int maxY, CollapseShapes shapes) {
+            this.world = world;
+            this.minChunkX = minChunkX;
+            this.minChunkZ = minChunkZ;
+            this.size = size;
+            this.minY = minY;
+            this.maxY = maxY;
+            this.columnsPerRow = (size - 2) * 16;
+            this.shapes = shapes;
+            this.snapshots = new ChunkSnapshot[size * size];
+            this.candidates = new AtomicIntegerArray(columnsPerRow * columnsPerRow);
+            this.risky = new AtomicIntegerArray(columnsPerRow * columnsPerRow);
+            this.unstable = new AtomicIntegerArray(columnsPerRow * columnsPerRow);
+        }
+    }
+
+    private static final class SectionTask extends RecursiveAction {
+        private final Region region;
+        private final List<long[]> sections;
+        private final int from;
+        private final int to;
+
+        SectionTask(Region region, List<long[]> sections, int from, int to) {
+            this.region = region;
+            this.sections = sections;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SECTIONS_PER_LEAF) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SectionTask(region, sections, from, middle), new SectionTask(region, sections, middle, to));
+                return;
+            }
+            SnapshotRegionAccess access = new SnapshotRegionAccess(region.snapshots, region.minChunkX,
+                    region.minChunkZ, region.size, region.size, region.world.getMaxHeight());
+            MiningSafetyManager safetyManager = new MiningSafetyManager(MiningCollapseListener.COLLAPSE_WHITELIST);
+            safetyManager.setShapes(region.shapes);
+            BreakContext context = new BreakContext();
+            for (int i = from; i < to; i++) {
+                long[] section = sections.get(i);
+                scanSection(access, safetyManager, context, (int) section[0], (int) section[1], (int) section[2]);
+            }
+        }
+
+        private void scanSection(SnapshotRegionAccess access, MiningSafetyManager safetyManager, BreakContext context,
+                int chunkX, int chunkZ, int sectionY) {
+            int baseX = (region.minChunkX + chunkX) << 4;
+            int baseZ = (region.minChunkZ + chunkZ) << 4;
+            int minY = Math.max(region.minY, sectionY << 4);
+            int maxY = Math.min(region.maxY, (sectionY << 4) + 15);
+            for (int y = minY; y <= maxY; y++) {
+                for (int lz = 0; lz < 16; lz++) {
+                    for (int lx = 0; lx < 16; lx++) {
+                        int x = baseX + lx;
+                        int z = baseZ + lz;
+                        Material type = access.getType(x, y, z);
+                        if (!safetyManager.getMaterials().isCollapsible(type) || !isExposed(access, x, y, z)) {
+                            continue;
+                        }
+
+                        // No breaker position: the vertical path still reports its layer analysis.
+                        CollapseType decision = safetyManager.evaluateBreak(access, context.set(x, y, z, type));
+                        int column = ((chunkZ - 1) * 16 + lz) * region.columnsPerRow + (chunkX - 1) * 16 + lx;
+                        region.candidates.incrementAndGet(column);
+                        region.decisions.incrementAndGet(decision.ordinal());
+                        if (decision != CollapseType.NONE) {
+                            region.risky.incrementAndGet(column);
+                        }
+                        if ((context.layerFlags & BreakContext.LAYERS_EVALUATED) != 0 && (context.layerFlags & 0xF) != 0xF) {
+                            region.unstable.incrementAndGet(column);
+                        }
+                    }
+                }
+            }
+        }
+
+        private boolean isExposed(VoxelAccess access, int x, int y, int z) {
+            return access.getType(x + 1, y, z) == Material.AIR || access.getType(x - 1, y, z) == Material.AIR
+                    || access.getType(x, y + 1, z) == Material.AIR || access.getType(x, y - 1, z) == Material.AIR
+                    || access.getType(x, y, z + 1) == Material.AIR || access.getType(x, y, z - 1) == Material.AIR;
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.smalone.toughwoodtools;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.logging.Level;
+
 import org.bukkit.Material;
 import org.bukkit.enchantments.Enchantment;
 import org.bukkit.entity.Entity;
@@ -17,30 +22,50 @@ import org.bukkit.plugin.java.JavaPlugin;
 
 public class ToughTools extends JavaPlugin implements Listener {
 
-    private boolean debugCaveIns;
+    private BreakTraceRecorder traceRecorder;
+    private LoadGovernor loadGovernor;
+    private ModuleManager modules;
+    private CollapseTraceBuffer collapseTrace;
+    private ChunkGuard chunkGuard;
+    private StabilityHeatmapScan heatmapScan;
+    private HandlerProfiler profiler;
+    private CollapseShapes collapseShapes;
 
     @Override
     public void onEnable() {
         saveDefaultConfig();
-        getConfig().addDefault("collapse-height", 6);
-        getConfig().addDefault("collapse-restore-delay", 200L);
-        getConfig().addDefault("collapse-cooldown-ms", 2000L);
-        getConfig().addDefault("small-islands-seed", 12345L);
-        getConfig().addDefault("debug-caveins", true);
+        addConfigDefaults();
         getConfig().options().copyDefaults(true);
         saveConfig();
 
-        debugCaveIns = getConfig().getBoolean("debug-caveins", true);
-
         warnIfSeedMismatch();
+        loadCollapseShapes();
+        startLoadGovernor();
+        startCollapseTrace();
+        chunkGuard = new ChunkGuard(getConfig().getInt("chunk-guard-loads-per-tick", 1),
+                getConfig().getInt("chunk-guard-timeout-ticks", 200), getLogger());
+        getServer().getScheduler().runTaskTimer(this, chunkGuard, 1L, 1L);
+
+        heatmapScan = new StabilityHeatmapScan(this);
+        profiler = new HandlerProfiler(getConfig().getInt("profiler-sample-every", 16));
+        modules = new ModuleManager(this);
+        modules.apply();
+        startTraceRecorder();
+        getCommand("toughtools").setExecutor(new ToughToolsCommand(this));
+    }
 
-        getServer().getPluginManager().registerEvents(this, this);
-        getServer().getPluginManager().registerEvents(new InstantWheatListener(this), this);
-        getServer().getPluginManager().registerEvents(new MiningCollapseListener(this), this);
-        getServer().getPluginManager().registerEvents(new GameplayListener(this), this);
-        getLogger().info("InstantWheatListener enabled: wheat matures in ~1s after planting.");
-        getLogger().info("MiningCollapseListener enabled: unstable ceilings may collapse.");
-        getLogger().info("ToughTools enabled: empowering wooden axes.");
+    @Override
+    public void onDisable() {
+        if (modules != null) {
+            modules.disableAll();
+        }
+        if (traceRecorder != null) {
+            traceRecorder.close();
+            traceRecorder = null;
+        }
+        if (collapseTrace != null) {
+            collapseTrace.close();
+        }
     }
 
     /**
@@ -49,7 +74,7 @@ public class ToughTools extends JavaPlugin implements Listener {
     @EventHandler
     public void onItemDamage(PlayerItemDamageEvent event) {
         ItemStack item = event.getItem();
-        if (!isWoodTool(item)) {
+        if (!isWoodTool(item) || !modules.isEnabled(FeatureModule.TOOL_BUFFS, event.getPlayer().getWorld())) {
             return;
         }
 
@@ -63,7 +88,7 @@ public class ToughTools extends JavaPlugin implements Listener {
     @EventHandler
     public void onBlockDamage(BlockDamageEvent event) {
         ItemStack item = event.getItemInHand();
-        if (!isWoodTool(item)) {
+        if (!isWoodTool(item) || !modules.isEnabled(FeatureModule.TOOL_BUFFS, event.getBlock().getWorld())) {
             return;
         }
 
@@ -83,7 +108,7 @@ public class ToughTools extends JavaPlugin implements Listener {
 
         Player player = (Player) damager;
         ItemStack held = player.getInventory().getItemInMainHand();
-        if (!isWoodTool(held)) {
+        if (!isWoodTool(held) || !modules.isEnabled(FeatureModule.TOOL_BUFFS, player.getWorld())) {
             return;
         }
 
@@ -101,7 +126,7 @@ public class ToughTools extends JavaPlugin implements Listener {
     @EventHandler
     public void onCraft(CraftItemEvent event) {
         ItemStack result = event.getCurrentItem();
-        if (!isWoodTool(result)) {
+        if (!isWoodTool(result) || !modules.isEnabled(FeatureModule.TOOL_BUFFS, event.getWhoClicked().getWorld())) {
             return;
         }
 
@@ -168,6 +193,86 @@ public class ToughTools extends JavaPlugin implements Listener {
         }
     }
 
+    private void loadCollapseShapes() {
+        collapseShapes = CollapseShapes.load(getConfig().getConfigurationSection("collapse-shapes"), getLogger());
+    }
+
+    /**
+     * Re-read config.yml and register or unregister feature modules to match it.
+     */
+    public void reload() {
+        reloadConfig();
+        addConfigDefaults();
+        loadCollapseShapes();
+        profiler.setSampleEvery(getConfig().getInt("profiler-sample-every", 16));
+        modules.apply();
+    }
+
+    private void addConfigDefaults() {
+        getConfig().addDefault("collapse-height", 6);
+        getConfig().addDefault("collapse-restore-delay", 200L);
+        getConfig().addDefault("collapse-cooldown-ms", 2000L);
+        getConfig().addDefault("small-islands-seed", 12345L);
+        getConfig().addDefault("trace-recorder-enabled", false);
+        getConfig().addDefault("trace-recorder-records", 2048);
+        getConfig().addDefault("load-shedding-enabled", true);
+        getConfig().addDefault("load-shedding-thresholds-ms", Arrays.asList(52, 56, 62, 75));
+        getConfig().addDefault("load-shedding-recover-ticks", 100);
+        getConfig().addDefault("collapse-trace-capacity", 4096);
+        getConfig().addDefault("collapse-trace-all", false);
+        getConfig().addDefault("collapse-trace-export", true);
+        getConfig().addDefault("chunk-guard-loads-per-tick", 1);
+        getConfig().addDefault("chunk-guard-timeout-ticks", 200);
+        getConfig().addDefault("cascade-enabled", true);
+        getConfig().addDefault("cascade-max-depth", 3);
+        getConfig().addDefault("cascade-blocks-per-tick", 48);
+        getConfig().addDefault("cascade-max-volume", 256);
+        getConfig().addDefault("mining-fatigue-enabled", true);
+        getConfig().addDefault("mining-fatigue-slots", 65536);
+        getConfig().addDefault("mining-fatigue-half-life-minutes", 1440);
+        getConfig().addDefault("mining-fatigue-thresholds", Arrays.asList(128, 512, 1536));
+        getConfig().addDefault("profiler-sample-every", 16);
+        getConfig().addDefault("village-block-breeding", false);
+        CollapseShapes.addDefaults(getConfig());
+        ModuleManager.addDefaults(getConfig());
+    }
+
+    private void startLoadGovernor() {
+        if (!getConfig().getBoolean("load-shedding-enabled", true)) {
+            return;
+        }
+        loadGovernor = new LoadGovernor(this, getConfig().getIntegerList("load-shedding-thresholds-ms"),
+                getConfig().getInt("load-shedding-recover-ticks", 100));
+        getServer().getScheduler().runTaskTimer(this, loadGovernor, 1L, 1L);
+    }
+
+    private void startCollapseTrace() {
+        collapseTrace = new CollapseTraceBuffer(getConfig().getInt("collapse-trace-capacity", 4096));
+        if (!getConfig().getBoolean("collapse-trace-export", true)) {
+            return;
+        }
+        File file = new File(getDataFolder(), "collapse-trace.log");
+        try {
+            collapseTrace.startExporter(file, getLogger());
+        } catch (IOException e) {
+            getLogger().log(Level.WARNING, "Could not open collapse trace log " + file, e);
+        }
+    }
+
+    private void startTraceRecorder() {
+        if (!getConfig().getBoolean("trace-recorder-enabled", false)) {
+            return;
+        }
+        File file = new File(getDataFolder(), "break-trace.bin");
+        try {
+            traceRecorder = new BreakTraceRecorder(this, file, getConfig().getInt("trace-recorder-records", 2048));
+            profiler.register(traceRecorder, this);
+            getLogger().info("BreakTraceRecorder enabled: recording block breaks to " + file.getName() + ".");
+        } catch (IOException e) {
+            getLogger().log(Level.WARNING, "Could not open break trace file " + file, e);
+        }
+    }
+
     @SuppressWarnings("unused")
     private void replaceHeldItem(Player player, ItemStack replacement) {
         if (player == null || replacement == null) {
@@ -177,7 +282,38 @@ public class ToughTools extends JavaPlugin implements Listener {
         inventory.setItemInMainHand(replacement);
     }
 
-    public boolean isDebugCaveIns() {
-        return debugCaveIns;
+    /**
+     * @return the collapse load governor, or null when load shedding is disabled
+     */
+    public LoadGovernor getLoadGovernor() {
+        return loadGovernor;
+    }
+
+    public CollapseTraceBuffer getCollapseTrace() {
+        return collapseTrace;
+    }
+
+    public ChunkGuard getChunkGuard() {
+        return chunkGuard;
+    }
+
+    /**
+     * The collapse shapes compiled from the current config.yml. They are immutable; a reload replaces
+     * them, so a holder keeps a consistent set.
+     */
+    public CollapseShapes getCollapseShapes() {
+        return collapseShapes;
+    }
+
+    public StabilityHeatmapScan getHeatmapScan() {
+        return heatmapScan;
+    }
+
+    public HandlerProfiler getProfiler() {
+        return profiler;
+    }
+
+    public ModuleManager getModules() {
+        return modules;
     }
 }
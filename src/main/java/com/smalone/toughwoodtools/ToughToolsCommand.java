@@ -0,0 +1,131 @@
+package com.smalone.toughwoodtools;
+
+import java.util.List;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+/**
+ * Handles {@code /toughtools} administration subcommands.
+ */
+public class ToughToolsCommand implements CommandExecutor {
+
+    private final ToughTools plugin;
+
+    public ToughToolsCommand(ToughTools plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 0) {
+            return false;
+        }
+
+        String sub = args[0].toLowerCase();
+        if (sub.equals("reload")) {
+            plugin.reload();
+            sender.sendMessage(ChatColor.GREEN + "ToughTools configuration reloaded.");
+            return true;
+        }
+        if (sub.equals("trace")) {
+            showTrace(sender, args);
+            return true;
+        }
+        if (sub.equals("heatmap")) {
+            startHeatmap(sender, args);
+            return true;
+        }
+        if (sub.equals("profile")) {
+            showProfile(sender, args);
+            return true;
+        }
+        return false;
+    }
+
+    private void startHeatmap(CommandSender sender, String[] args) {
+        if (!(sender instanceof Player)) {
+            sender.sendMessage(ChatColor.RED + "Only players can start a heatmap scan; it is centered on you.");
+            return;
+        }
+
+        int radius;
+        int minY;
+        int maxY;
+        try {
+            radius = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+            minY = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+            maxY = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+        } catch (NumberFormatException e) {
+            sender.sendMessage(ChatColor.RED + "Usage: /toughtools heatmap [radius] [minY] [maxY]");
+            return;
+        }
+        if (radius < 0 || radius > StabilityHeatmapScan.MAX_RADIUS || minY > maxY) {
+            sender.sendMessage(ChatColor.RED + "Radius must be 0-" + StabilityHeatmapScan.MAX_RADIUS
+                    + " chunks and minY must not exceed maxY.");
+            return;
+        }
+
+        Location location = ((Player) sender).getLocation();
+        boolean started = plugin.getHeatmapScan().start(sender, location.getWorld(),
+                location.getBlockX() >> 4, location.getBlockZ() >> 4, radius, minY, maxY);
+        if (started) {
+            sender.sendMessage(ChatColor.GREEN + "Scanning " + (radius * 2 + 1) + "x" + (radius * 2 + 1)
+                    + " chunks for collapse risk...");
+        } else {
+            sender.sendMessage(ChatColor.RED + "A heatmap scan is already running.");
+        }
+    }
+
+    private void showProfile(CommandSender sender, String[] args) {
+        HandlerProfiler profiler = plugin.getProfiler();
+        if (args.length > 1 && args[1].equalsIgnoreCase("reset")) {
+            profiler.reset();
+            sender.sendMessage(ChatColor.GREEN + "Handler timings cleared.");
+            return;
+        }
+        if (profiler.getSampleEvery() <= 0) {
+            sender.sendMessage(ChatColor.RED + "Handler timing is off; set profiler-sample-every above 0.");
+            return;
+        }
+
+        int count = 5;
+        if (args.length > 1) {
+            try {
+                count = Math.max(1, Math.min(20, Integer.parseInt(args[1])));
+            } catch (NumberFormatException e) {
+                sender.sendMessage(ChatColor.RED + "Usage: /toughtools profile [count|reset] [world]");
+                return;
+            }
+        }
+        String world = args.length > 2 ? args[2] : null;
+        sender.sendMessage(ChatColor.GOLD + "Handler timings" + (world == null ? "" : " in " + world)
+                + ", sampling 1 in " + profiler.getSampleEvery() + ":");
+        for (String line : profiler.report(count, world)) {
+            sender.sendMessage(ChatColor.GRAY + line);
+        }
+    }
+
+    private void showTrace(CommandSender sender, String[] args) {
+        int count = 10;
+        if (args.length > 1) {
+            try {
+                count = Math.max(1, Math.min(100, Integer.parseInt(args[1])));
+            } catch (NumberFormatException e) {
+                sender.sendMessage(ChatColor.RED + "Count must be a number.");
+                return;
+            }
+        }
+
+        CollapseTraceBuffer trace = plugin.getCollapseTrace();
+        List<String> lines = trace.latest(count);
+        sender.sendMessage(ChatColor.GOLD + "Last " + lines.size() + " of " + trace.getWritten() + " collapse decisions:");
+        for (String line : lines) {
+            sender.sendMessage(ChatColor.GRAY + line);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.smalone.toughwoodtools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.bukkit.Material;
+
+/**
+ * Headless replay of a trace written by {@link BreakTraceRecorder}.
+ *
+ * <p>Every recorded break is fed through the same cooldown and {@link MiningSafetyManager} rules the
+ * live listener uses, against the voxels captured at break time. Decisions and evaluation time per
+ * server tick are printed to stdout.</p>
+ *
+ * <pre>java -cp spigot-api.jar:ToughTools.jar com.smalone.toughwoodtools.TraceReplay trace.bin [cooldown-ms]</pre>
+ */
+public final class TraceReplay {
+
+    private static final long MILLIS_PER_TICK = 50L;
+
+    private TraceReplay() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: TraceReplay <trace-file> [cooldown-ms]");
+            System.exit(1);
+            return;
+        }
+        long cooldownMillis = args.length > 1 ? Long.parseLong(args[1]) : 2000L;
+        replay(new File(args[0]), cooldownMillis);
+    }
+
+    @SuppressWarnings("deprecation")
+    static void replay(File file, long cooldownMillis) throws IOException {
+        MiningSafetyManager safetyManager = new MiningSafetyManager(MiningCollapseListener.COLLAPSE_WHITELIST);
+        CollapseCooldowns cooldowns = new CollapseCooldowns(cooldownMillis);
+        BreakTrace.Record record = new BreakTrace.Record();
+        BreakContext context = new BreakContext();
+        Map<CollapseType, Integer> decisions = new EnumMap<CollapseType, Integer>(CollapseType.class);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(BreakTrace.FILE_HEADER_SIZE);
+            readFully(channel, header, 0L);
+            header.flip();
+            if (header.getInt() != BreakTrace.MAGIC || header.getInt() != BreakTrace.VERSION) {
+                throw new IOException("Not a ToughTools break trace: " + file);
+            }
+            int capacity = header.getInt();
+            if (header.getInt() != BreakTrace.SLOT_SIZE) {
+                throw new IOException("Trace slot size does not match this build");
+            }
+            long written = header.getLong();
+            long first = Math.max(0L, written - capacity);
+
+            ByteBuffer slot = ByteBuffer.allocate(BreakTrace.SLOT_SIZE);
+            long currentTick = Long.MIN_VALUE;
+            int tickBreaks = 0;
+            long tickNanos = 0L;
+            int tickCount = 0;
+            long totalNanos = 0L;
+            long worstTickNanos = 0L;
+            long worstTick = 0L;
+            int cooledDown = 0;
+
+            for (long sequence = first; sequence < written; sequence++) {
+                slot.clear();
+                readFully(channel, slot, BreakTrace.slotOffset(sequence, capacity));
+                slot.flip();
+                record.read(slot);
+
+                if (record.tick != currentTick) {
+                    if (tickBreaks > 0) {
+                        printTick(currentTick, tickBreaks, tickNanos);
+                    }
+                    if (tickNanos > worstTickNanos) {
+                        worstTickNanos = tickNanos;
+                        worstTick = currentTick;
+                    }
+                    currentTick = record.tick;
+                    tickBreaks = 0;
+                    tickNanos = 0L;
+                    tickCount++;
+                }
+
+                UUID player = new UUID(record.playerMost, record.playerLeast);
+                String world = new UUID(record.worldMost, record.worldLeast).toString();
+                long now = record.tick * MILLIS_PER_TICK;
+                Material type = Material.getMaterial(record.typeId);
+                if (cooldowns.isCoolingDown(player, world, record.x, record.y, record.z, now)) {
+                    cooledDown++;
+                    tickBreaks++;
+                    continue;
+                }
+
+                context.set(record.x, record.y, record.z, type == null ? Material.AIR : type);
+                if (record.hasPlayer) {
+                    context.withPlayerPosition(record.playerX, record.playerY, record.playerZ);
+                }
+                SnapshotVoxelAccess access = new SnapshotVoxelAccess(record);
+
+                long start = System.nanoTime();
+                CollapseType decision = safetyManager.evaluateBreak(access, context);
+                long elapsed = System.nanoTime() - start;
+
+                if (decision != CollapseType.NONE) {
+                    cooldowns.markCooldown(player, world, record.x, record.y, record.z, now);
+                }
+                Integer count = decisions.get(decision);
+                decisions.put(decision, count == null ? 1 : count + 1);
+                tickBreaks++;
+                tickNanos += elapsed;
+                totalNanos += elapsed;
+
+                if (decision != CollapseType.NONE) {
+                    System.out.println("tick " + record.tick + " " + player + " broke " + context.type
+                            + " at " + record.x + ", " + record.y + ", " + record.z + " -> " + decision
+                            + " (removed=" + access.getRemoved() + ", spawned=" + access.getSpawned()
+                            + ", " + elapsed / 1000L + "us)");
+                }
+            }
+            if (tickBreaks > 0) {
+                printTick(currentTick, tickBreaks, tickNanos);
+            }
+            if (tickNanos > worstTickNanos) {
+                worstTickNanos = tickNanos;
+                worstTick = currentTick;
+            }
+
+            System.out.println("Replayed " + (written - first) + " breaks over " + tickCount + " ticks"
+                    + " (" + cooledDown + " skipped by cooldown)");
+            System.out.println("Decisions: " + decisions);
+            if (tickCount > 0) {
+                System.out.println("Evaluation time: total=" + totalNanos / 1000L + "us, mean/tick="
+                        + totalNanos / tickCount / 1000L + "us, worst tick=" + worstTick
+                        + " (" + worstTickNanos / 1000L + "us)");
+            }
+        }
+    }
+
+    private static void printTick(long tick, int breaks, long nanos) {
+        System.out.println("tick " + tick + ": " + breaks + " breaks, " + nanos / 1000L + "us");
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of trace file");
+            }
+            position += read;
+        }
+    }
+}
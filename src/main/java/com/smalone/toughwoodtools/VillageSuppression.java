@@ -0,0 +1,259 @@
+package com.smalone.toughwoodtools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bukkit.Chunk;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.IronGolem;
+import org.bukkit.entity.Villager;
+
+/**
+ * Remembers which chunks belong to villages and strips their villagers and iron golems.
+ *
+ * <p>Village chunks are recognised when they are populated with villagers in them, or when a
+ * village-related spawn is attempted there. Iron golems built by players are never removed and never
+ * mark a chunk. Each world keeps its chunks in an open-addressing table of packed chunk coordinates, so
+ * the per-spawn check is a couple of array reads.</p>
+ *
+ * <p>The chunks of a world are saved to {@code <world>.chunks} in the given directory when the world is
+ * unloaded or the module is disabled, and read back the first time the world is looked at again, so
+ * villages generated before a restart are still stripped when their chunks load.</p>
+ */
+public class VillageSuppression {
+
+    private final Map<String, ChunkSet> villageChunks = new HashMap<String, ChunkSet>();
+    private final File directory;
+    private final Logger logger;
+
+    /**
+     * @param directory where each world's village chunks are saved
+     */
+    public VillageSuppression(File directory, Logger logger) {
+        this.directory = directory;
+        this.logger = logger;
+    }
+
+    public boolean isVillageChunk(String worldName, int chunkX, int chunkZ) {
+        return chunks(worldName).contains(key(chunkX, chunkZ));
+    }
+
+    public void markVillageChunk(String worldName, int chunkX, int chunkZ) {
+        chunks(worldName).add(key(chunkX, chunkZ));
+    }
+
+    /**
+     * Save the world's village chunks and forget them until the world is looked at again.
+     */
+    public void unload(String worldName) {
+        ChunkSet chunks = villageChunks.remove(worldName);
+        if (chunks != null) {
+            save(worldName, chunks);
+        }
+    }
+
+    /**
+     * Save every world's village chunks and forget them.
+     */
+    public void unloadAll() {
+        Iterator<Map.Entry<String, ChunkSet>> iterator = villageChunks.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, ChunkSet> entry = iterator.next();
+            save(entry.getKey(), entry.getValue());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Remove the villagers and village iron golems from a freshly populated chunk, marking it as a
+     * village chunk if it generated villagers.
+     *
+     * @return the number of entities removed
+     */
+    public int stripPopulated(Chunk chunk) {
+        int villagers = 0;
+        int removed = 0;
+        for (Entity entity : chunk.getEntities()) {
+            if (entity instanceof Villager) {
+                villagers++;
+            }
+            if (isVillageEntity(entity)) {
+                entity.remove();
+                removed++;
+            }
+        }
+        if (villagers > 0) {
+            markVillageChunk(chunk.getWorld().getName(), chunk.getX(), chunk.getZ());
+        }
+        return removed;
+    }
+
+    /**
+     * Remove the villagers and village iron golems from a loaded chunk that is already known to be a
+     * village chunk; other chunks are left alone.
+     *
+     * @return the number of entities removed
+     */
+    public int stripKnown(Chunk chunk) {
+        if (!isVillageChunk(chunk.getWorld().getName(), chunk.getX(), chunk.getZ())) {
+            return 0;
+        }
+        int removed = 0;
+        for (Entity entity : chunk.getEntities()) {
+            if (isVillageEntity(entity)) {
+                entity.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private static boolean isVillageEntity(Entity entity) {
+        return entity instanceof Villager
+                || (entity instanceof IronGolem && !((IronGolem) entity).isPlayerCreated());
+    }
+
+    public int size() {
+        int size = 0;
+        for (ChunkSet chunks : villageChunks.values()) {
+            size += chunks.size;
+        }
+        return size;
+    }
+
+    private ChunkSet chunks(String worldName) {
+        ChunkSet chunks = villageChunks.get(worldName);
+        if (chunks == null) {
+            chunks = load(worldName);
+            villageChunks.put(worldName, chunks);
+        }
+        return chunks;
+    }
+
+    private ChunkSet load(String worldName) {
+        ChunkSet chunks = new ChunkSet();
+        File file = fileFor(worldName);
+        if (!file.isFile()) {
+            return chunks;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                chunks.add(in.readLong());
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not read village chunks from " + file, e);
+        }
+        chunks.dirty = false;
+        return chunks;
+    }
+
+    /**
+     * Write through a temporary file so a crash mid-save keeps the previous list.
+     */
+    private void save(String worldName, ChunkSet chunks) {
+        if (!chunks.dirty) {
+            return;
+        }
+        File file = fileFor(worldName);
+        File temp = new File(directory, file.getName() + ".tmp");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.warning("Could not create " + directory);
+            return;
+        }
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(chunks.size);
+                for (long stored : chunks.keys) {
+                    if (stored != 0L) {
+                        out.writeLong(stored);
+                    }
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            chunks.dirty = false;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not save village chunks to " + file, e);
+        }
+    }
+
+    private File fileFor(String worldName) {
+        return new File(directory, worldName + ".chunks");
+    }
+
+    /** Never 0, which marks an empty slot. */
+    private static long key(int chunkX, int chunkZ) {
+        return (((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL)) ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * Grow-only open-addressing set of chunk keys.
+     */
+    private static final class ChunkSet {
+
+        private long[] keys = new long[64];
+        private int size;
+        /** Holds chunks that are not saved yet. */
+        private boolean dirty;
+
+        boolean contains(long key) {
+            int mask = keys.length - 1;
+            for (int slot = slotOf(key, mask); ; slot = (slot + 1) & mask) {
+                long stored = keys[slot];
+                if (stored == key) {
+                    return true;
+                }
+                if (stored == 0L) {
+                    return false;
+                }
+            }
+        }
+
+        void add(long key) {
+            if ((size + 1) * 2 > keys.length) {
+                long[] old = keys;
+                keys = new long[old.length * 2];
+                size = 0;
+                for (long stored : old) {
+                    if (stored != 0L) {
+                        insert(stored);
+                    }
+                }
+            }
+            insert(key);
+        }
+
+        private void insert(long key) {
+            int mask = keys.length - 1;
+            for (int slot = slotOf(key, mask); ; slot = (slot + 1) & mask) {
+                long stored = keys[slot];
+                if (stored == key) {
+                    return;
+                }
+                if (stored == 0L) {
+                    keys[slot] = key;
+                    size++;
+                    dirty = true;
+                    return;
+                }
+            }
+        }
+
+        private static int slotOf(long key, int mask) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.smalone.toughwoodtools;
+
+import org.bukkit.Material;
+
+/**
+ * Minimal block access used by the collapse logic so the same rules can run against a live world
+ * or against a captured voxel snapshot.
+ */
+public interface VoxelAccess {
+
+    Material getType(int x, int y, int z);
+
+    byte getData(int x, int y, int z);
+
+    int getHighestBlockY(int x, int z);
+
+    int getMaxHeight();
+
+    void setAir(int x, int y, int z);
+
+    void setBlock(int x, int y, int z, Material type, byte data);
+
+    void spawnFallingBlock(double x, double y, double z, Material type, byte data);
+}
@@ -0,0 +1,101 @@
+package com.smalone.toughwoodtools;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Allocation budget for the plugin's own part of the break hot path: the cooldown lookup, the fatigue
+ * lookup and a full {@link MiningSafetyManager} evaluation, measured per break with the thread
+ * allocation counter. Only breaks that do not collapse count, since a collapse is allowed to allocate.
+ *
+ * <p>Blocks are read from an in-memory {@link SnapshotVoxelAccess}. On a live server the reads go
+ * through {@link BukkitVoxelAccess}, and CraftWorld allocates a {@code BlockPosition} for every
+ * {@code getBlockTypeIdAt} and {@code getHighestBlockYAt}; that cost is outside the plugin and is not
+ * measured here.</p>
+ */
+public class AllocationBudgetTest {
+
+    private static final int WARMUP_CASES = 20000;
+    private static final int MEASURED_CASES = 50000;
+    private static final int CALIBRATION_ROUNDS = 1000;
+    private static final long SEED = 12345L;
+    /** Below one byte per break: rare one-off allocations pass, any allocation on every break fails. */
+    private static final double MAX_AVERAGE_BYTES = 1.0D;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void nonCollapsingBreaksStayWithinBudget() throws Exception {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue("this JVM does not report thread allocation", bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) bean;
+        long thread = Thread.currentThread().getId();
+
+        File fatigueFile = new File(folder.getRoot(), "fatigue.idx");
+        MiningFatigueIndex fatigue = new MiningFatigueIndex(fatigueFile, 4096, 1440, new int[] {128, 512, 1536});
+        MiningSafetyManager engine = new MiningSafetyManager(MiningCollapseListener.COLLAPSE_WHITELIST);
+        CollapseCooldowns cooldowns = new CollapseCooldowns(2000L);
+        UUID player = new UUID(SEED, ~SEED);
+        String world = "budget";
+        BreakContext context = new BreakContext();
+        BreakTrace.Record generated = new BreakTrace.Record();
+        BreakTrace.Record work = new BreakTrace.Record();
+        SnapshotVoxelAccess access = new SnapshotVoxelAccess(work);
+        Random random = new Random(SEED);
+
+        // The counter itself may allocate; measure that once and subtract it from every sample.
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < CALIBRATION_ROUNDS; i++) {
+            long before = allocation.getThreadAllocatedBytes(thread);
+            long after = allocation.getThreadAllocatedBytes(thread);
+            overhead = Math.min(overhead, after - before);
+        }
+
+        long measured = 0L;
+        long totalBytes = 0L;
+        long worstBytes = 0L;
+        try {
+            for (int i = 0; i < WARMUP_CASES + MEASURED_CASES; i++) {
+                DifferentialHarness.generate(random, generated);
+                work.copyFrom(generated);
+                long now = i * 50L;
+
+                long before = allocation.getThreadAllocatedBytes(thread);
+                boolean cooling = cooldowns.isCoolingDown(player, world, generated.x, generated.y, generated.z, now);
+                fatigue.recordBreak(generated.x, generated.y, generated.z);
+                DifferentialHarness.contextFor(generated, context);
+                context.fatigue = fatigue.getLevel(generated.x, generated.y, generated.z);
+                CollapseType triggered = cooling ? CollapseType.NONE : engine.evaluateBreak(access, context);
+                long bytes = allocation.getThreadAllocatedBytes(thread) - before - overhead;
+
+                if (triggered != CollapseType.NONE) {
+                    cooldowns.markCooldown(player, world, generated.x, generated.y, generated.z, now);
+                    continue;
+                }
+                if (i < WARMUP_CASES) {
+                    continue;
+                }
+                measured++;
+                totalBytes += Math.max(0L, bytes);
+                worstBytes = Math.max(worstBytes, bytes);
+            }
+        } finally {
+            fatigue.close();
+        }
+
+        double average = totalBytes / (double) measured;
+        assertTrue(String.format("%.2f bytes/break average over %d non-collapsing breaks (worst %d bytes)",
+                average, measured, worstBytes), average < MAX_AVERAGE_BYTES);
+    }
+}
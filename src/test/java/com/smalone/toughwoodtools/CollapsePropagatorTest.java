@@ -0,0 +1,101 @@
+package com.smalone.toughwoodtools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.bukkit.Material;
+import org.junit.Test;
+
+/**
+ * Chains a tunnel cave-in through two stacked cavities. Each cavity layer is open except for single
+ * hanging stones, so every generation exposes blocks that the next one brings down.
+ */
+public class CollapsePropagatorTest {
+
+    private static final int SURFACE = 50;
+    private static final int TUNNEL_Y = 20;
+    private static final int FIRST_CAVITY_Y = 27;
+    private static final int SECOND_CAVITY_Y = 34;
+
+    @Test
+    public void collapseChainsThroughExposedCeilings() {
+        GeneratedVoxelWorld world = buildWorld();
+        MiningSafetyManager engine = new MiningSafetyManager(MiningCollapseListener.COLLAPSE_WHITELIST);
+        CollapseTraceBuffer trace = new CollapseTraceBuffer(256);
+        CollapsePropagator propagator = new CollapsePropagator(engine, trace, null, 3, 48, 512);
+
+        BreakContext context = new BreakContext();
+        context.set(14, TUNNEL_Y, 16, Material.STONE);
+        assertEquals(CollapseType.TUNNEL_X, engine.evaluateBreak(propagator.track(world), context));
+        world.setAir(14, TUNNEL_Y, 16);
+        propagator.seed(world, "world", context.spawned);
+        int blocksBefore = countBlocks(world);
+
+        for (int tick = 0; tick < 40 && propagator.getFrontierSize() > 0; tick++) {
+            propagator.run();
+        }
+
+        boolean firstGeneration = false;
+        boolean secondGeneration = false;
+        List<String> records = trace.latest(256);
+        for (String record : records) {
+            // "<time> <type> <world> <x>,<y>,<z> ..."
+            String[] fields = record.split(" ");
+            assertNotEquals(CollapseType.CAVE_CEILING.name(), fields[1]);
+            assertNotEquals(CollapseType.VERTICAL_SHAFT.name(), fields[1]);
+            int y = Integer.parseInt(fields[3].split(",")[1]);
+            firstGeneration |= y == FIRST_CAVITY_Y;
+            secondGeneration |= y == SECOND_CAVITY_Y;
+        }
+        assertTrue("no cascade into the first cavity: " + records, firstGeneration);
+        assertTrue("no cascade into the second cavity: " + records, secondGeneration);
+        // Cascades only move blocks down; they never create material.
+        assertEquals(blocksBefore, countBlocks(world));
+    }
+
+    private static GeneratedVoxelWorld buildWorld() {
+        GeneratedVoxelWorld world = new GeneratedVoxelWorld(48, 64, 48, 1L);
+        for (int x = 0; x < 48; x++) {
+            for (int z = 0; z < 48; z++) {
+                for (int y = 1; y < 64; y++) {
+                    world.setBlock(x, y, z, y <= SURFACE ? Material.STONE : Material.AIR, (byte) 0);
+                }
+            }
+        }
+        // Tunnel along x, two high, still closed at the block the player breaks.
+        for (int x = 8; x <= 20; x++) {
+            if (x != 14) {
+                world.setAir(x, TUNNEL_Y, 16);
+                world.setAir(x, TUNNEL_Y + 1, 16);
+            }
+        }
+        for (int x = 4; x <= 28; x++) {
+            for (int z = 4; z <= 28; z++) {
+                if (z != 16 || x % 3 != 0) {
+                    world.setAir(x, FIRST_CAVITY_Y, z);
+                }
+                if (x % 3 != 0 || z % 3 != 0) {
+                    world.setAir(x, SECOND_CAVITY_Y, z);
+                }
+            }
+        }
+        return world;
+    }
+
+    private static int countBlocks(GeneratedVoxelWorld world) {
+        int blocks = 0;
+        for (int x = 0; x < 48; x++) {
+            for (int z = 0; z < 48; z++) {
+                for (int y = 0; y < 64; y++) {
+                    if (world.getType(x, y, z) != Material.AIR) {
+                        blocks++;
+                    }
+                }
+            }
+        }
+        return blocks;
+    }
+}
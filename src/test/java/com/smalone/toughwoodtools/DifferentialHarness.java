@@ -0,0 +1,189 @@
+package com.smalone.toughwoodtools;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.bukkit.Material;
+
+/**
+ * Differential check: generate randomized voxel neighborhoods around a break and run the frozen
+ * {@link ReferenceCollapseEngine} and a candidate engine side by side, requiring identical decisions
+ * and identical collapse plans (every block removal and falling block, in order).
+ *
+ * <p>Generation deliberately biases towards the subtle boundaries: surface depth around the
+ * six-block threshold, players zero to five blocks above the break, tunnels around six blocks long,
+ * wood posts, ores, liquids and bedrock.</p>
+ */
+public final class DifferentialHarness {
+
+    private static final Material[] PALETTE = {
+            Material.STONE, Material.STONE, Material.STONE, Material.DIRT, Material.COBBLESTONE, Material.WOOD,
+            Material.COAL_ORE, Material.IRON_ORE, Material.GOLD_ORE, Material.REDSTONE_ORE, Material.DIAMOND_ORE,
+            Material.LAPIS_ORE, Material.BEDROCK, Material.STATIONARY_WATER, Material.LAVA, Material.GRAVEL,
+            Material.TORCH, Material.LOG
+    };
+    private static final int MAX_REPORTED = 10;
+
+    private DifferentialHarness() {
+    }
+
+    /**
+     * @param coverage receives how often the reference reached each decision
+     * @return the number of cases where the candidate diverged from the reference
+     */
+    static int run(CollapseEngine candidate, int cases, long seed, Map<CollapseType, Integer> coverage) {
+        CollapseEngine reference = new ReferenceCollapseEngine(MiningCollapseListener.COLLAPSE_WHITELIST);
+        Random random = new Random(seed);
+        BreakTrace.Record generated = new BreakTrace.Record();
+        BreakTrace.Record referenceWorld = new BreakTrace.Record();
+        BreakTrace.Record candidateWorld = new BreakTrace.Record();
+        BreakContext context = new BreakContext();
+        int mismatches = 0;
+
+        for (int i = 0; i < cases; i++) {
+            long caseSeed = random.nextLong();
+            generate(new Random(caseSeed), generated);
+            referenceWorld.copyFrom(generated);
+            candidateWorld.copyFrom(generated);
+
+            PlanRecordingAccess expectedPlan = new PlanRecordingAccess(new SnapshotVoxelAccess(referenceWorld));
+            PlanRecordingAccess actualPlan = new PlanRecordingAccess(new SnapshotVoxelAccess(candidateWorld));
+            CollapseType expected = reference.evaluateBreak(expectedPlan, contextFor(generated, context));
+            CollapseType actual = candidate.evaluateBreak(actualPlan, contextFor(generated, context));
+
+            Integer count = coverage.get(expected);
+            coverage.put(expected, count == null ? 1 : count + 1);
+
+            if (expected != actual || !expectedPlan.samePlan(actualPlan)) {
+                mismatches++;
+                if (mismatches <= MAX_REPORTED) {
+                    System.out.println("Mismatch in case " + i + " (case seed " + caseSeed + "): broke "
+                            + context.type + " at " + generated.x + ", " + generated.y + ", " + generated.z
+                            + (generated.hasPlayer ? " player at " + generated.playerX + ", " + generated.playerY
+                            + ", " + generated.playerZ : " no player"));
+                    System.out.println("  reference: " + expected + " " + expectedPlan.describe());
+                    System.out.println("  candidate: " + actual + " " + actualPlan.describe());
+                }
+            }
+        }
+
+        return mismatches;
+    }
+
+    @SuppressWarnings("deprecation")
+    static BreakContext contextFor(BreakTrace.Record record, BreakContext context) {
+        Material type = Material.getMaterial(record.typeId);
+        context.set(record.x, record.y, record.z, type == null ? Material.AIR : type);
+        if (record.hasPlayer) {
+            context.withPlayerPosition(record.playerX, record.playerY, record.playerZ);
+        }
+        return context;
+    }
+
+    @SuppressWarnings("deprecation")
+    static void generate(Random random, BreakTrace.Record record) {
+        record.maxHeight = random.nextInt(4) == 0 ? 128 : 256;
+        record.x = random.nextInt(2000) - 1000;
+        record.z = random.nextInt(2000) - 1000;
+        record.y = random.nextInt(8) == 0 ? record.maxHeight - 1 - random.nextInt(20) : 2 + random.nextInt(80);
+
+        int baseSurface = record.y + random.nextInt(14) - 2;
+        for (int i = 0; i < BreakTrace.COLUMNS; i++) {
+            record.heights[i] = (short) (random.nextInt(4) == 0 ? baseSurface + random.nextInt(5) - 2 : baseSurface);
+        }
+
+        double airChance = random.nextDouble() * 0.7D;
+        for (int i = 0; i < BreakTrace.CELLS; i++) {
+            if (random.nextDouble() < airChance) {
+                record.types[i] = 0;
+                record.data[i] = 0;
+            } else {
+                record.types[i] = (byte) PALETTE[random.nextInt(PALETTE.length)].getId();
+                record.data[i] = (byte) random.nextInt(16);
+            }
+        }
+
+        int r = BreakTrace.RADIUS;
+        int b = BreakTrace.BELOW;
+        if (random.nextBoolean()) {
+            // Tunnel through the break along one axis, optionally three wide, with optional wood posts.
+            boolean alongX = random.nextBoolean();
+            int negative = random.nextInt(9);
+            int positive = random.nextInt(9);
+            int width = random.nextBoolean() ? 1 : 0;
+            for (int d = -negative; d <= positive; d++) {
+                for (int side = -width; side <= width; side++) {
+                    for (int h = 0; h <= 1; h++) {
+                        int bx = r + (alongX ? d : side);
+                        int bz = r + (alongX ? side : d);
+                        set(record, bx, b + h, bz, Material.AIR);
+                    }
+                }
+                if (random.nextInt(6) == 0) {
+                    int bx = r + (alongX ? d : width + 1);
+                    int bz = r + (alongX ? width + 1 : d);
+                    set(record, bx, b + random.nextInt(3) - 1, bz, Material.WOOD);
+                }
+            }
+        }
+        if (random.nextBoolean()) {
+            // Open shaft above the break where a player might stand.
+            int height = 1 + random.nextInt(BreakTrace.ABOVE);
+            for (int h = 1; h <= height; h++) {
+                set(record, r, b + h, r, Material.AIR);
+            }
+        }
+        if (random.nextInt(3) == 0) {
+            // Cave below the break.
+            for (int dx = -2; dx <= 2; dx++) {
+                for (int dz = -2; dz <= 2; dz++) {
+                    for (int dy = 1; dy <= 5; dy++) {
+                        if (random.nextInt(4) != 0) {
+                            set(record, r + dx, b - dy, r + dz, Material.AIR);
+                        }
+                    }
+                }
+            }
+        }
+        if (random.nextInt(3) == 0) {
+            // Open one stability layer so the vertical path sees air counts near its thresholds.
+            int layer = 1 + random.nextInt(4);
+            for (int dx = -layer; dx <= layer; dx++) {
+                for (int dz = -layer; dz <= layer; dz++) {
+                    if (random.nextBoolean()) {
+                        set(record, r + dx, b + layer, r + dz, Material.AIR);
+                    }
+                }
+            }
+        }
+
+        Material brokenType = PALETTE[random.nextInt(PALETTE.length)];
+        if (random.nextInt(10) == 0) {
+            brokenType = Material.AIR;
+        }
+        record.typeId = brokenType.getId();
+        set(record, r, b, r, brokenType);
+
+        int playerRoll = random.nextInt(10);
+        record.hasPlayer = playerRoll >= 3;
+        if (playerRoll >= 5) {
+            record.playerX = record.x;
+            record.playerZ = record.z;
+            record.playerY = record.y + random.nextInt(7) - 1;
+        } else {
+            record.playerX = record.x + random.nextInt(5) - 2;
+            record.playerZ = record.z + random.nextInt(5) - 2;
+            record.playerY = record.y + random.nextInt(7) - 1;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void set(BreakTrace.Record record, int bx, int by, int bz, Material type) {
+        if (bx < 0 || by < 0 || bz < 0 || bx >= BreakTrace.SIZE_XZ || by >= BreakTrace.SIZE_Y || bz >= BreakTrace.SIZE_XZ) {
+            return;
+        }
+        int index = BreakTrace.cellIndex(bx, by, bz);
+        record.types[index] = (byte) type.getId();
+        record.data[index] = 0;
+    }
+}
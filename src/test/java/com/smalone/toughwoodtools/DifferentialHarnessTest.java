@@ -0,0 +1,31 @@
+package com.smalone.toughwoodtools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Pins {@link MiningSafetyManager} to the frozen {@link ReferenceCollapseEngine}. The seed is fixed so a
+ * failure reproduces; any case that diverges is printed with its own case seed.
+ */
+public class DifferentialHarnessTest {
+
+    private static final int CASES = 20000;
+    private static final long SEED = 7L;
+
+    @Test
+    public void liveEngineMatchesReference() {
+        Map<CollapseType, Integer> coverage = new EnumMap<CollapseType, Integer>(CollapseType.class);
+        int mismatches = DifferentialHarness.run(
+                new MiningSafetyManager(MiningCollapseListener.COLLAPSE_WHITELIST), CASES, SEED, coverage);
+
+        assertEquals("collapse plans differing from the reference", 0, mismatches);
+        for (CollapseType type : CollapseType.values()) {
+            assertTrue("generated cases never reach " + type, coverage.containsKey(type));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.smalone.toughwoodtools;
+
+import java.util.Arrays;
+
+import org.bukkit.Material;
+
+/**
+ * {@link VoxelAccess} decorator that records every write as a flat list of longs, so two collapse
+ * plans can be compared for exact equality, including order.
+ */
+public class PlanRecordingAccess implements VoxelAccess {
+
+    static final long OP_SET_AIR = 1L;
+    static final long OP_SET_BLOCK = 2L;
+    static final long OP_SPAWN = 3L;
+
+    private final VoxelAccess delegate;
+    private long[] plan = new long[64];
+    private int size;
+
+    public PlanRecordingAccess(VoxelAccess delegate) {
+        this.delegate = delegate;
+    }
+
+    public boolean samePlan(PlanRecordingAccess other) {
+        if (size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (plan[i] != other.plan[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public String describe() {
+        StringBuilder out = new StringBuilder();
+        int i = 0;
+        while (i < size) {
+            long op = plan[i];
+            if (op == OP_SET_AIR) {
+                out.append("air(").append(plan[i + 1]).append(',').append(plan[i + 2]).append(',').append(plan[i + 3]).append(") ");
+                i += 4;
+            } else if (op == OP_SET_BLOCK) {
+                out.append("set(").append(plan[i + 1]).append(',').append(plan[i + 2]).append(',').append(plan[i + 3])
+                        .append(' ').append(Material.values()[(int) plan[i + 4]]).append(':').append(plan[i + 5]).append(") ");
+                i += 6;
+            } else {
+                out.append("fall(").append(Double.longBitsToDouble(plan[i + 1])).append(',')
+                        .append(Double.longBitsToDouble(plan[i + 2])).append(',')
+                        .append(Double.longBitsToDouble(plan[i + 3])).append(' ')
+                        .append(Material.values()[(int) plan[i + 4]]).append(':').append(plan[i + 5]).append(") ");
+                i += 6;
+            }
+        }
+        return out.toString().trim();
+    }
+
+    @Override
+    public Material getType(int x, int y, int z) {
+        return delegate.getType(x, y, z);
+    }
+
+    @Override
+    public byte getData(int x, int y, int z) {
+        return delegate.getData(x, y, z);
+    }
+
+    @Override
+    public int getHighestBlockY(int x, int z) {
+        return delegate.getHighestBlockY(x, z);
+    }
+
+    @Override
+    public int getMaxHeight() {
+        return delegate.getMaxHeight();
+    }
+
+    @Override
+    public void setAir(int x, int y, int z) {
+        append(OP_SET_AIR, x, y, z);
+        delegate.setAir(x, y, z);
+    }
+
+    @Override
+    public void setBlock(int x, int y, int z, Material type, byte data) {
+        append(OP_SET_BLOCK, x, y, z, type.ordinal(), data);
+        delegate.setBlock(x, y, z, type, data);
+    }
+
+    @Override
+    public void spawnFallingBlock(double x, double y, double z, Material type, byte data) {
+        append(OP_SPAWN, Double.doubleToLongBits(x), Double.doubleToLongBits(y), Double.doubleToLongBits(z),
+                type.ordinal(), data);
+        delegate.spawnFallingBlock(x, y, z, type, data);
+    }
+
+    private void append(long... values) {
+        if (size + values.length > plan.length) {
+            plan = Arrays.copyOf(plan, Math.max(plan.length * 2, size + values.length));
+        }
+        System.arraycopy(values, 0, plan, size, values.length);
+        size += values.length;
+    }
+}
@@ -0,0 +1,252 @@
+package com.smalone.toughwoodtools;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.bukkit.Material;
+
+/**
+ * Frozen, deliberately straightforward copy of the collapse rules as originally shipped. Faster
+ * implementations are checked against it by {@link DifferentialHarness}; do not optimize or change
+ * this class unless the gameplay rules themselves change.
+ */
+public class ReferenceCollapseEngine implements CollapseEngine {
+
+    private static final EnumSet<Material> ORE_TYPES = EnumSet.of(
+            Material.COAL_ORE,
+            Material.IRON_ORE,
+            Material.GOLD_ORE,
+            Material.REDSTONE_ORE,
+            Material.DIAMOND_ORE,
+            Material.LAPIS_ORE
+    );
+    private static final int REQUIRED_AIR_RUN = 6;
+    private static final int MAX_HORIZONTAL_HEIGHT = 6;
+    private static final int MAX_HORIZONTAL_DISTANCE = 6;
+    private static final int MAX_FALLING_BLOCKS = 90;
+
+    private final Set<Material> collapseWhitelist;
+
+    public ReferenceCollapseEngine(Set<Material> collapseWhitelist) {
+        this.collapseWhitelist = collapseWhitelist;
+    }
+
+    @Override
+    public CollapseType evaluateBreak(VoxelAccess world, BreakContext c) {
+        Material brokenType = c.type;
+        if (collapseWhitelist.contains(brokenType)) {
+            if (ORE_TYPES.contains(brokenType)) {
+                if (horizontal(world, c, true)) {
+                    return CollapseType.TUNNEL_X;
+                }
+                if (horizontal(world, c, false)) {
+                    return CollapseType.TUNNEL_Z;
+                }
+            } else {
+                boolean deep = c.y <= world.getHighestBlockY(c.x, c.z) - 6;
+                if (deep && world.getType(c.x, c.y - 1, c.z) == Material.AIR) {
+                    caveCeiling(world, c.x, c.y, c.z, brokenType);
+                    return CollapseType.CAVE_CEILING;
+                }
+                if (deep && vertical(world, c)) {
+                    return CollapseType.VERTICAL_SHAFT;
+                }
+                if (horizontal(world, c, true)) {
+                    return CollapseType.TUNNEL_X;
+                }
+                if (horizontal(world, c, false)) {
+                    return CollapseType.TUNNEL_Z;
+                }
+            }
+        }
+
+        if (collapseWhitelist.contains(brokenType) && !isProtected(brokenType) && !hasSupports(world, c)) {
+            unsupported(world, c.x, c.y, c.z);
+            return CollapseType.UNSUPPORTED_CEILING;
+        }
+        return CollapseType.NONE;
+    }
+
+    private boolean vertical(VoxelAccess world, BreakContext c) {
+        boolean allStable = true;
+        for (int layer = 1; layer <= 4; layer++) {
+            int required = layer == 1 ? 6 : layer == 2 ? 17 : layer == 3 ? 33 : 55;
+            int air = 0;
+            for (int dx = -layer; dx <= layer; dx++) {
+                for (int dz = -layer; dz <= layer; dz++) {
+                    if (world.getType(c.x + dx, c.y + layer, c.z + dz) == Material.AIR) {
+                        air++;
+                    }
+                }
+            }
+            allStable &= air >= required;
+        }
+        if (allStable) {
+            return false;
+        }
+
+        if (!c.hasPlayer || c.playerX != c.x || c.playerZ != c.z) {
+            return false;
+        }
+        int dy = c.playerY - c.y;
+        if (dy < 1 || dy > 3) {
+            return false;
+        }
+
+        Material fillType = world.getType(c.x, c.y, c.z);
+        if (!collapseWhitelist.contains(fillType) || fillType == Material.AIR) {
+            fillType = Material.STONE;
+        }
+
+        int spawned = 0;
+        int maxHeight = Math.min(world.getMaxHeight() - 1, c.playerY + 16);
+        for (int y = c.playerY; y <= maxHeight; y++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    if (spawned >= MAX_FALLING_BLOCKS) {
+                        return true;
+                    }
+                    if (world.getType(c.playerX + dx, y, c.playerZ + dz) != Material.AIR) {
+                        continue;
+                    }
+                    world.spawnFallingBlock(c.playerX + dx + 0.5D, y + 0.0D, c.playerZ + dz + 0.5D, fillType, (byte) 0);
+                    spawned++;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean horizontal(VoxelAccess world, BreakContext c, boolean alongX) {
+        int positive = airRun(world, c, alongX, 1);
+        int negative = airRun(world, c, alongX, -1);
+        int total = positive + negative + 1;
+        if (total < REQUIRED_AIR_RUN) {
+            return false;
+        }
+
+        int direction = positive >= negative ? 1 : -1;
+        for (int d = 1; d <= MAX_HORIZONTAL_DISTANCE; d++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int offset = -1; offset <= 1; offset++) {
+                    int x = alongX ? c.x + direction * d : c.x + offset;
+                    int z = alongX ? c.z + offset : c.z + direction * d;
+                    if (world.getType(x, c.y + dy, z) == Material.WOOD) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        int length = Math.min(total, MAX_HORIZONTAL_DISTANCE);
+        int spawned = 0;
+        for (int d = 1; d <= length; d++) {
+            for (int side = -1; side <= 1; side++) {
+                int x = alongX ? c.x + direction * d : c.x + side;
+                int z = alongX ? c.z + side : c.z + direction * d;
+                for (int dy = 1; dy <= MAX_HORIZONTAL_HEIGHT; dy++) {
+                    if (spawned >= MAX_FALLING_BLOCKS) {
+                        break;
+                    }
+                    int y = c.y + dy;
+                    if (y >= world.getMaxHeight()) {
+                        break;
+                    }
+                    Material type = world.getType(x, y, z);
+                    if (type == Material.AIR || !collapseWhitelist.contains(type)) {
+                        continue;
+                    }
+                    byte data = world.getData(x, y, z);
+                    world.setAir(x, y, z);
+                    world.spawnFallingBlock(x + 0.5D, y + 0.0D, z + 0.5D, type, data);
+                    spawned++;
+                }
+                if (spawned >= MAX_FALLING_BLOCKS) {
+                    return true;
+                }
+            }
+        }
+        return true;
+    }
+
+    private int airRun(VoxelAccess world, BreakContext c, boolean alongX, int direction) {
+        int count = 0;
+        for (int d = 1; d <= REQUIRED_AIR_RUN; d++) {
+            int x = alongX ? c.x + direction * d : c.x;
+            int z = alongX ? c.z : c.z + direction * d;
+            if (world.getType(x, c.y, z) != Material.AIR) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private void caveCeiling(VoxelAccess world, int ox, int oy, int oz, Material fillType) {
+        int spawned = 0;
+        for (int dx = -2; dx <= 2; dx++) {
+            for (int dz = -2; dz <= 2; dz++) {
+                int air = 0;
+                for (int dy = 1; dy <= 5 && oy - dy >= 0; dy++) {
+                    if (world.getType(ox + dx, oy - dy, oz + dz) == Material.AIR) {
+                        air++;
+                    }
+                }
+                for (int i = 0; i < air; i++) {
+                    if (spawned >= MAX_FALLING_BLOCKS) {
+                        return;
+                    }
+                    world.spawnFallingBlock(ox + dx + 0.5D, oy - 0.5D + i, oz + dz + 0.5D, fillType, (byte) 0);
+                    spawned++;
+                }
+            }
+        }
+    }
+
+    private boolean hasSupports(VoxelAccess world, BreakContext c) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                if (dx == 0 && dz == 0) {
+                    continue;
+                }
+                Material type = world.getType(c.x + dx, c.y, c.z + dz);
+                if (type != Material.AIR && !isProtected(type) && type.isSolid()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void unsupported(VoxelAccess world, int ox, int oy, int oz) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                int airStreak = 0;
+                for (int dy = 0; dy < world.getMaxHeight(); dy++) {
+                    int x = ox + dx;
+                    int y = oy + dy;
+                    int z = oz + dz;
+                    Material type = world.getType(x, y, z);
+                    if (type == Material.AIR) {
+                        if (++airStreak >= 3) {
+                            break;
+                        }
+                        continue;
+                    }
+                    airStreak = 0;
+                    if (isProtected(type)) {
+                        continue;
+                    }
+                    byte data = world.getData(x, y, z);
+                    world.setAir(x, y, z);
+                    world.spawnFallingBlock(x + 0.5D, y + 0.0D, z + 0.5D, type, data);
+                }
+            }
+        }
+    }
+
+    private boolean isProtected(Material type) {
+        return type == Material.BEDROCK || type == Material.WATER || type == Material.STATIONARY_WATER
+                || type == Material.LAVA || type == Material.STATIONARY_LAVA;
+    }
+}
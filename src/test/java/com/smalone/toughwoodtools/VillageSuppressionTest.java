@@ -0,0 +1,55 @@
+package com.smalone.toughwoodtools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Village chunks must survive a restart and a world unload, or villages generated earlier would keep
+ * their residents when their chunks load again.
+ */
+public class VillageSuppressionTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void markedChunksSurviveRestart() {
+        File directory = new File(folder.getRoot(), "villages");
+        VillageSuppression before = new VillageSuppression(directory, Logger.getAnonymousLogger());
+        for (int i = 0; i < 100; i++) {
+            before.markVillageChunk("world", i, -i);
+        }
+        before.markVillageChunk("world_nether", -30000000 >> 4, 30000000 >> 4);
+        before.unloadAll();
+        assertEquals(0, before.size());
+
+        VillageSuppression after = new VillageSuppression(directory, Logger.getAnonymousLogger());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(after.isVillageChunk("world", i, -i));
+        }
+        assertFalse(after.isVillageChunk("world", 1, 1));
+        assertTrue(after.isVillageChunk("world_nether", -30000000 >> 4, 30000000 >> 4));
+        assertFalse(after.isVillageChunk("world_the_end", 0, 0));
+    }
+
+    @Test
+    public void unloadingOneWorldKeepsItsChunksOnDisk() {
+        VillageSuppression villages = new VillageSuppression(folder.getRoot(), Logger.getAnonymousLogger());
+        villages.markVillageChunk("world", 3, 4);
+        villages.markVillageChunk("other", 5, 6);
+        villages.unload("world");
+        assertEquals(1, villages.size());
+
+        assertTrue(villages.isVillageChunk("world", 3, 4));
+        assertTrue(villages.isVillageChunk("other", 5, 6));
+        assertFalse(villages.isVillageChunk("other", 3, 4));
+    }
+}